@@ -15,10 +15,23 @@ import com.acg.ACGLib.R;
 import com.acg.lib.listeners.ACGActivity;
 import com.acg.lib.listeners.ACGListeners;
 import com.acg.lib.listeners.ResourceReadyListener;
+import com.acg.lib.memory.ACGMemory;
 import com.acg.lib.validation.ACGValidator;
 import com.acg.lib.validation.bitmap.BitmapValidator;
+import com.acg.lib.validation.bitmap.FingerprintBitmapValidator;
+import com.acg.lib.validation.bitmap.ReferenceRenderer;
+import com.acg.lib.validation.bitmap.ReferenceSupplier;
+import com.acg.lib.validation.bitmap.SharedReferences;
+import com.acg.lib.validation.bitmap.SizedReferenceBitmapValidator;
+import com.acg.lib.view.ValidatedViewWrapper;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 
+import java.lang.ref.WeakReference;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 import static com.acg.lib.validation.ValidationParameters.*;
 
@@ -67,6 +80,7 @@ public abstract class ACG<T> extends Fragment {
         validationArguments = new Bundle();
         validationArguments.putInt(RANDOM_CHECK_INVALIDATION_PARAMETER, randomCheckInvalidationParameter());
         validationArguments.putInt(RANDOM_CHECK_INTERVAL_PARAMETER, randomCheckIntervalParameter());
+        validationArguments.putBoolean(RELATIVE_SIZES_PARAMETER, rendersReferencesLazily());
 
         // Create an ACG validator
         validator = new ACGValidator(validationArguments, bitmapValidator);
@@ -87,18 +101,51 @@ public abstract class ACG<T> extends Fragment {
 
     /**
      * Initialize the bitmap validator
+     * The references are shared with every other instance of the same ACG type, can be released under memory
+     * pressure, and are rendered again on the next validation
      */
     protected void initBitmapValidator(@NonNull Context context) {
-        List<View> viewStates = renderViewsInIsolation(context);
-        bitmapValidator = initBitmapValidator(viewStates);
+        ACGMemory.register(context);
+        bitmapValidator = SharedReferences.forType(getClass(), new IsolatedReferences(this));
     }
 
     protected abstract BitmapValidator initBitmapValidator(@NonNull List<View> views);
 
+    /**
+     * Whether to render references lazily for each size the ACG is measured at, instead of once ahead of time
+     * ACGs with relative sizes (MATCH_PARENT or WRAP_CONTENT) must override this to return true
+     */
+    protected boolean rendersReferencesLazily() {
+        return false;
+    }
+
+    /**
+     * Whether to validate by fingerprinting the draw operations of the ACG, with pixel capture only as a periodic
+     * backstop, instead of capturing pixels every time
+     * This only applies to references rendered ahead of time, since fingerprints are recorded at the rendered size
+     */
+    protected boolean validatesWithFingerprints() {
+        return false;
+    }
+
     /**
      * Render a bitmap for the view
      */
     protected @NonNull Bitmap getBitmapForView(@NonNull View view) {
+        int measureSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+        return renderBitmapForView(view, measureSpec, measureSpec);
+    }
+
+    /**
+     * Render a bitmap for the view at an exact size
+     */
+    protected @NonNull Bitmap getBitmapForView(@NonNull View view, int width, int height) {
+        int widthMeasureSpec = View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY);
+        int heightMeasureSpec = View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY);
+        return renderBitmapForView(view, widthMeasureSpec, heightMeasureSpec);
+    }
+
+    private @NonNull Bitmap renderBitmapForView(@NonNull View view, int widthMeasureSpec, int heightMeasureSpec) {
         // Build a container to stick the view in for measuring
         Context context = view.getContext();
         ViewGroup container = new FrameLayout(context);
@@ -109,8 +156,7 @@ public abstract class ACG<T> extends Fragment {
         inflater.inflate(R.layout.isolated_acg_view, container, true);
 
         // Measure the view to get the width and height
-        int measureSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
-        container.measure(measureSpec, measureSpec);
+        container.measure(widthMeasureSpec, heightMeasureSpec);
 
         // Call layout
         container.layout(0, 0, container.getMeasuredWidth(), container.getMeasuredHeight());
@@ -122,6 +168,89 @@ public abstract class ACG<T> extends Fragment {
         return bitmap;
     }
 
+    /**
+     * Builds references by rendering the inner view in isolation, either all ahead of time or each state on demand
+     * This only holds the ACG weakly, since shared references outlive the instance that supplied them
+     */
+    private static final class IsolatedReferences implements ReferenceSupplier, ReferenceRenderer {
+
+        private final @NonNull WeakReference<ACG<?>> acgReference;
+        private final int acgHashCode;
+
+        private IsolatedReferences(@NonNull ACG<?> acg) {
+            this.acgReference = new WeakReference<ACG<?>>(acg);
+            this.acgHashCode = System.identityHashCode(acg);
+        }
+
+        /**
+         * Equal for the same ACG instance, so that attaching it again doesn't add another supplier
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof IsolatedReferences)) {
+                return false;
+            }
+
+            ACG<?> acg = acgReference.get();
+            return acg != null && acg == ((IsolatedReferences) other).acgReference.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return acgHashCode;
+        }
+
+        @Override
+        public boolean isGone() {
+            return acgReference.get() == null;
+        }
+
+        /**
+         * Rendering uses the resources of the ACG, so it can only happen while it is attached
+         */
+        private ACG<?> attachedACG() {
+            ACG<?> acg = acgReference.get();
+            return acg == null || acg.getActivity() == null ? null : acg;
+        }
+
+        @Override
+        public BitmapValidator get() {
+            ACG<?> acg = attachedACG();
+            if (acg == null) {
+                return null;
+            }
+
+            if (acg.rendersReferencesLazily()) {
+                return new SizedReferenceBitmapValidator(this);
+            }
+
+            List<View> viewStates = acg.renderViewsInIsolation(acg.getActivity());
+            BitmapValidator pixelValidator = acg.initBitmapValidator(viewStates);
+
+            if (acg.validatesWithFingerprints()) {
+                return new FingerprintBitmapValidator(viewStates, pixelValidator);
+            }
+
+            return pixelValidator;
+        }
+
+        @Override
+        public Bitmap renderReference(int stateIndex, int width, int height) {
+            ACG<?> acg = attachedACG();
+            if (acg == null) {
+                return null;
+            }
+
+            for (View view : acg.renderViewsInIsolation(acg.getActivity())) {
+                if (((ValidatedViewWrapper) view).internalViewStateIndex() == stateIndex) {
+                    return acg.getBitmapForView(view, width, height);
+                }
+            }
+
+            return null;
+        }
+    }
+
     /**
      * Render the inner view in isolation in any possible states to populate bitmaps
      * We use the ViewWrapper here since it doesn't make a difference what approach we take for the sake of
@@ -139,6 +268,36 @@ public abstract class ACG<T> extends Fragment {
      */
     public abstract T getResource() throws ACGResourceAccessException;
 
+    /**
+     * Access the resource without throwing, returning absent if it isn't available
+     * ACGs that know cheaply whether the resource is available should override this, so that polling doesn't pay for
+     * building exceptions. A Void resource is always absent, so use getResource for ACGs like PlayAudioACG.
+     */
+    public @NonNull Optional<T> tryGetResource() {
+        try {
+            return Optional.fromNullable(getResource());
+        } catch (ACGResourceAccessException e) {
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * Access the resource on an executor, so that an ACG that blocks doesn't block the caller
+     * The future completes on the executor, and fails with an ACGResourceAccessException if the resource is not
+     * available
+     */
+    public @NonNull ListenableFuture<T> getResourceAsync(@NonNull Executor executor) {
+        ListenableFutureTask<T> task = ListenableFutureTask.create(new Callable<T>() {
+            @Override
+            public T call() throws ACGResourceAccessException {
+                return getResource();
+            }
+        });
+
+        executor.execute(task);
+        return task;
+    }
+
     /**
      * Bind the listeners
      */
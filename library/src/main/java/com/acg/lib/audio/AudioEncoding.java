@@ -0,0 +1,145 @@
+package com.acg.lib.audio;
+
+import android.media.MediaRecorder;
+import android.support.annotation.NonNull;
+
+/**
+ * How AudioACG encodes what it records: the container, the encoder, and optionally the sample rate, bit rate, and
+ * number of channels
+ * Encodings that can be written without seeking back, such as AAC in ADTS or raw AMR, can be streamed to sinks that
+ * aren't files.
+ */
+public final class AudioEncoding {
+
+    public static final int DEFAULT = -1;
+
+    /**
+     * AMR narrowband in a 3GP file, which is what AudioACG always used, and is cheap to encode
+     */
+    public static final AudioEncoding AMR_NB_3GP = new Builder(MediaRecorder.OutputFormat.THREE_GPP, MediaRecorder.AudioEncoder.AMR_NB, "3gp").build();
+
+    /**
+     * Raw AMR narrowband, which can be streamed
+     */
+    public static final AudioEncoding AMR_NB = new Builder(MediaRecorder.OutputFormat.AMR_NB, MediaRecorder.AudioEncoder.AMR_NB, "amr").streamable().build();
+
+    /**
+     * Raw AMR wideband, which can be streamed
+     */
+    public static final AudioEncoding AMR_WB = new Builder(MediaRecorder.OutputFormat.AMR_WB, MediaRecorder.AudioEncoder.AMR_WB, "awb").streamable().build();
+
+    /**
+     * AAC in an MPEG-4 file, which is smaller for the same quality, but costs more to encode
+     */
+    public static final AudioEncoding AAC_MPEG_4 = new Builder(MediaRecorder.OutputFormat.MPEG_4, MediaRecorder.AudioEncoder.AAC, "m4a").build();
+
+    /**
+     * AAC in ADTS frames, which can be streamed
+     */
+    public static final AudioEncoding AAC_ADTS = new Builder(MediaRecorder.OutputFormat.AAC_ADTS, MediaRecorder.AudioEncoder.AAC, "aac").streamable().build();
+
+    private final int outputFormat;
+    private final int audioEncoder;
+    private final @NonNull String fileExtension;
+    private final boolean streamable;
+    private final int sampleRate;
+    private final int bitRate;
+    private final int channels;
+
+    private AudioEncoding(@NonNull Builder builder) {
+        this.outputFormat = builder.outputFormat;
+        this.audioEncoder = builder.audioEncoder;
+        this.fileExtension = builder.fileExtension;
+        this.streamable = builder.streamable;
+        this.sampleRate = builder.sampleRate;
+        this.bitRate = builder.bitRate;
+        this.channels = builder.channels;
+    }
+
+    /**
+     * Configure the recorder, which must have its audio source set and no output format yet
+     */
+    public void applyTo(@NonNull MediaRecorder mediaRecorder) {
+        mediaRecorder.setOutputFormat(outputFormat);
+        mediaRecorder.setAudioEncoder(audioEncoder);
+
+        if (sampleRate != DEFAULT) {
+            mediaRecorder.setAudioSamplingRate(sampleRate);
+        }
+        if (bitRate != DEFAULT) {
+            mediaRecorder.setAudioEncodingBitRate(bitRate);
+        }
+        if (channels != DEFAULT) {
+            mediaRecorder.setAudioChannels(channels);
+        }
+    }
+
+    public @NonNull String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * Whether the output can be written without seeking, so that it can go to a pipe
+     */
+    public boolean isStreamable() {
+        return streamable;
+    }
+
+    /**
+     * A copy of this encoding with other settings
+     */
+    public @NonNull Builder buildUpon() {
+        Builder builder = new Builder(outputFormat, audioEncoder, fileExtension)
+                .setSampleRate(sampleRate)
+                .setBitRate(bitRate)
+                .setChannels(channels);
+        return streamable ? builder.streamable() : builder;
+    }
+
+    public static final class Builder {
+
+        private final int outputFormat;
+        private final int audioEncoder;
+        private final @NonNull String fileExtension;
+        private boolean streamable = false;
+        private int sampleRate = DEFAULT;
+        private int bitRate = DEFAULT;
+        private int channels = DEFAULT;
+
+        /**
+         * Use MediaRecorder.OutputFormat and MediaRecorder.AudioEncoder constants
+         */
+        public Builder(int outputFormat, int audioEncoder, @NonNull String fileExtension) {
+            this.outputFormat = outputFormat;
+            this.audioEncoder = audioEncoder;
+            this.fileExtension = fileExtension;
+        }
+
+        /**
+         * Mark the container as one that is written without seeking
+         */
+        public @NonNull Builder streamable() {
+            this.streamable = true;
+            return this;
+        }
+
+        public @NonNull Builder setSampleRate(int sampleRate) {
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        public @NonNull Builder setBitRate(int bitRate) {
+            this.bitRate = bitRate;
+            return this;
+        }
+
+        public @NonNull Builder setChannels(int channels) {
+            this.channels = channels;
+            return this;
+        }
+
+        public @NonNull AudioEncoding build() {
+            return new AudioEncoding(this);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.acg.lib.audio;
+
+import android.media.MediaRecorder;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Where AudioACG writes what it records
+ * A sink is opened for each recording, and told when the recording stopped, so the same sink can take many recordings.
+ */
+public interface AudioOutputSink {
+
+    /**
+     * Set the recorder's output for a new recording, after the encoding was applied and before the recorder is prepared
+     */
+    void open(@NonNull MediaRecorder mediaRecorder, @NonNull AudioEncoding audioEncoding) throws IOException;
+
+    /**
+     * Called once the recorder stopped, so that everything it recorded was written
+     */
+    void onRecordingStopped();
+
+    /**
+     * Whether the recorder can't seek in the sink, so that only streamable encodings can be recorded into it
+     */
+    boolean requiresStreamableEncoding();
+}
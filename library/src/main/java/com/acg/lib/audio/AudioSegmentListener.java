@@ -0,0 +1,18 @@
+package com.acg.lib.audio;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+
+/**
+ * Receives each segment of a segmented recording as soon as it is finished, so that it can be processed while the
+ * recording goes on
+ */
+public interface AudioSegmentListener {
+
+    /**
+     * Called with a finished segment file, numbered from 0 for each recording
+     * The last segment is reported when recording stops, before the resource is ready.
+     */
+    void onSegmentFinished(int segmentIndex, @NonNull File segment);
+}
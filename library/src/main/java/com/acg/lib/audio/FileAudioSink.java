@@ -0,0 +1,42 @@
+package com.acg.lib.audio;
+
+import android.media.MediaRecorder;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.util.UUID;
+
+/**
+ * Writes each recording to a new file in a directory
+ */
+public final class FileAudioSink implements AudioOutputSink {
+
+    private final @NonNull File directory;
+    private File file;
+
+    public FileAudioSink(@NonNull File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void open(@NonNull MediaRecorder mediaRecorder, @NonNull AudioEncoding audioEncoding) {
+        file = new File(directory, String.format("audio_acg_output%s.%s", UUID.randomUUID(), audioEncoding.getFileExtension()));
+        mediaRecorder.setOutputFile(file.getAbsolutePath());
+    }
+
+    @Override
+    public void onRecordingStopped() {
+    }
+
+    @Override
+    public boolean requiresStreamableEncoding() {
+        return false;
+    }
+
+    /**
+     * The file of the last recording, or null if nothing was recorded yet
+     */
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,33 @@
+package com.acg.lib.audio;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Keeps each recording in memory, skipping the file system, which suits short clips
+ */
+public final class MemoryAudioSink extends PipeAudioSink {
+
+    private volatile byte[] recording;
+
+    @Override
+    protected @NonNull OutputStream openOutputStream() {
+        recording = null;
+        return new ByteArrayOutputStream();
+    }
+
+    @Override
+    protected void onRecordingCopied(@NonNull OutputStream outputStream, IOException failure) {
+        recording = failure == null ? ((ByteArrayOutputStream) outputStream).toByteArray() : null;
+    }
+
+    /**
+     * The encoded bytes of the last recording, or null if there is none or it failed
+     */
+    public byte[] getRecording() {
+        return recording;
+    }
+}
@@ -0,0 +1,178 @@
+package com.acg.lib.audio;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+import static android.os.Process.THREAD_PRIORITY_URGENT_AUDIO;
+
+/**
+ * Captures PCM from the microphone into a preallocated ring of direct buffer chunks, and streams each chunk to a
+ * listener as soon as it is read
+ *
+ * Nothing is allocated or copied per chunk: AudioRecord reads straight into a slice of the ring, and the listener
+ * gets a read-only view of that slice. A capture can be started and stopped any number of times.
+ * If the microphone fails while capturing, the capture ends and the failure listener is told, but the microphone is
+ * only released by {@link #stop()}.
+ */
+public final class PcmCapture {
+
+    public static final int DEFAULT_SAMPLE_RATE = 16000;
+    public static final int DEFAULT_CHUNK_MILLIS = 20;
+    public static final int DEFAULT_RING_CHUNKS = 50;
+
+    private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
+    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
+    private static final int BYTES_PER_FRAME = 2;
+
+    private final @NonNull PcmStreamListener listener;
+    private final int sampleRateInHz;
+    private final int chunkBytes;
+
+    // AudioRecord reads to the start of a buffer, so each chunk is its own slice of the ring
+    private final ByteBuffer[] chunks;
+    private final ByteBuffer[] chunkViews;
+
+    private volatile FailureListener failureListener;
+    private AudioRecord audioRecord;
+    private Thread captureThread;
+    private volatile boolean capturing = false;
+
+    public interface FailureListener {
+
+        /**
+         * Called on the capture thread after the last chunk, when reading from the microphone failed
+         */
+        void onCaptureFailed(@NonNull PcmCapture capture, @NonNull Exception cause);
+    }
+
+    public PcmCapture(@NonNull PcmStreamListener listener) {
+        this(listener, DEFAULT_SAMPLE_RATE, DEFAULT_CHUNK_MILLIS, DEFAULT_RING_CHUNKS);
+    }
+
+    public PcmCapture(@NonNull PcmStreamListener listener, int sampleRateInHz, int chunkMillis, int ringChunks) {
+        this.listener = listener;
+        this.sampleRateInHz = sampleRateInHz;
+        this.chunkBytes = sampleRateInHz * chunkMillis / 1000 * BYTES_PER_FRAME;
+
+        ByteBuffer ring = ByteBuffer.allocateDirect(chunkBytes * ringChunks);
+        chunks = new ByteBuffer[ringChunks];
+        chunkViews = new ByteBuffer[ringChunks];
+        for (int i = 0; i < ringChunks; i++) {
+            ring.limit((i + 1) * chunkBytes).position(i * chunkBytes);
+            chunks[i] = ring.slice();
+            chunkViews[i] = chunks[i].asReadOnlyBuffer();
+        }
+    }
+
+    public void setFailureListener(@NonNull FailureListener failureListener) {
+        this.failureListener = failureListener;
+    }
+
+    /**
+     * Start the microphone, then capture on a new capture thread
+     * This blocks until the microphone started, and throws if it couldn't, such as without the RECORD_AUDIO
+     * permission or while another app holds the microphone, so call it off the UI thread.
+     */
+    public synchronized void start() {
+        if (audioRecord != null) {
+            return;
+        }
+
+        int minBufferBytes = AudioRecord.getMinBufferSize(sampleRateInHz, CHANNEL_CONFIG, AUDIO_FORMAT);
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRateInHz, CHANNEL_CONFIG, AUDIO_FORMAT,
+                Math.max(minBufferBytes, 4 * chunkBytes));
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            audioRecord.release();
+            audioRecord = null;
+            throw new RuntimeException("Failed to initialize the audio record");
+        }
+
+        // Start here rather than on the capture thread, so that a stop can't race it and leave the microphone on
+        boolean started = false;
+        try {
+            audioRecord.startRecording();
+            started = audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING;
+        } finally {
+            if (!started) {
+                audioRecord.release();
+                audioRecord = null;
+            }
+        }
+        if (!started) {
+            throw new RuntimeException("Failed to start the audio record");
+        }
+
+        capturing = true;
+        final AudioRecord record = audioRecord;
+        captureThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                capture(record);
+            }
+        }, "ACG PCM capture");
+        captureThread.start();
+    }
+
+    /**
+     * Stop capturing, returning once the last chunk has been delivered
+     */
+    public synchronized void stop() {
+        if (audioRecord == null) {
+            return;
+        }
+
+        // Stopping the record unblocks the read on the capture thread, which may also have ended by itself
+        capturing = false;
+        try {
+            audioRecord.stop();
+            captureThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            audioRecord.release();
+            audioRecord = null;
+            captureThread = null;
+        }
+    }
+
+    public boolean isCapturing() {
+        return capturing;
+    }
+
+    private void capture(@NonNull AudioRecord record) {
+        Process.setThreadPriority(THREAD_PRIORITY_URGENT_AUDIO);
+
+        listener.onPcmStarted(sampleRateInHz, CHANNEL_CONFIG, AUDIO_FORMAT);
+
+        int failedRead = 0;
+        for (int chunk = 0; capturing; chunk = (chunk + 1) % chunks.length) {
+            int read = record.read(chunks[chunk], chunkBytes);
+            if (read < 0) {
+                // The record failed, unless it was stopped under the read
+                failedRead = capturing ? read : 0;
+                capturing = false;
+                break;
+            }
+            if (read == 0) {
+                continue;
+            }
+
+            ByteBuffer chunkView = chunkViews[chunk];
+            chunkView.clear();
+            chunkView.limit(read);
+            listener.onPcmChunk(chunkView);
+        }
+
+        listener.onPcmStopped();
+
+        FailureListener currentFailureListener = failureListener;
+        if (failedRead < 0 && currentFailureListener != null) {
+            currentFailureListener.onCaptureFailed(this, new RuntimeException("Failed to read from the audio record: " + failedRead));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.acg.lib.audio;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives PCM audio while it is being recorded
+ * Callbacks happen on the capture thread, so they must return quickly.
+ */
+public interface PcmStreamListener {
+
+    /**
+     * Called before the first chunk, with the format of the chunks to come
+     */
+    void onPcmStarted(int sampleRateInHz, int channelConfig, int audioFormat);
+
+    /**
+     * Called with each chunk as soon as it is captured
+     * The chunk is a read-only view into the capture ring, which isn't copied. Its contents stay intact until the
+     * ring wraps around to it again, so copy out of it, or hand it off to be consumed before then.
+     */
+    void onPcmChunk(@NonNull ByteBuffer chunk);
+
+    /**
+     * Called after the last chunk
+     */
+    void onPcmStopped();
+}
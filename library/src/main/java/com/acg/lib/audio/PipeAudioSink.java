@@ -0,0 +1,116 @@
+package com.acg.lib.audio;
+
+import android.media.MediaRecorder;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Records into a pipe instead of a file, copying what comes out of the pipe to an output stream on a reader thread
+ * The recorder can't seek in a pipe, so the encoding must be streamable.
+ */
+abstract class PipeAudioSink implements AudioOutputSink {
+
+    private static final int COPY_BUFFER_BYTES = 4096;
+
+    private ParcelFileDescriptor writeSide;
+    private Thread readerThread;
+
+    /**
+     * The stream that the recording is copied to, which is called on the reader thread
+     */
+    protected abstract @NonNull OutputStream openOutputStream() throws IOException;
+
+    /**
+     * Called on the reader thread once the whole recording was copied, or copying failed
+     */
+    protected abstract void onRecordingCopied(@NonNull OutputStream outputStream, IOException failure);
+
+    @Override
+    public void open(@NonNull MediaRecorder mediaRecorder, @NonNull AudioEncoding audioEncoding) throws IOException {
+        if (!audioEncoding.isStreamable()) {
+            throw new IllegalArgumentException("Only streamable encodings can be recorded without a file");
+        }
+
+        ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+        final ParcelFileDescriptor readSide = pipe[0];
+        final OutputStream outputStream;
+
+        // Nothing reads the pipe until the reader thread starts, so close both ends if anything fails before that
+        boolean opened = false;
+        try {
+            outputStream = openOutputStream();
+            mediaRecorder.setOutputFile(pipe[1].getFileDescriptor());
+            opened = true;
+        } finally {
+            if (!opened) {
+                closeQuietly(readSide);
+                closeQuietly(pipe[1]);
+            }
+        }
+
+        writeSide = pipe[1];
+        readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                copy(readSide, outputStream);
+            }
+        }, "ACG audio sink");
+        readerThread.start();
+    }
+
+    @Override
+    public boolean requiresStreamableEncoding() {
+        return true;
+    }
+
+    @Override
+    public void onRecordingStopped() {
+        // Closing the write side ends the stream for the reader
+        closeQuietly(writeSide);
+
+        try {
+            readerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        writeSide = null;
+        readerThread = null;
+    }
+
+    private static void closeQuietly(@NonNull ParcelFileDescriptor fileDescriptor) {
+        try {
+            fileDescriptor.close();
+        } catch (IOException e) {
+            // Nothing else is written to it anyway
+        }
+    }
+
+    private void copy(@NonNull ParcelFileDescriptor readSide, @NonNull OutputStream outputStream) {
+        InputStream inputStream = new ParcelFileDescriptor.AutoCloseInputStream(readSide);
+        IOException failure = null;
+
+        try {
+            byte[] buffer = new byte[COPY_BUFFER_BYTES];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                // The recording was already copied
+            }
+        }
+
+        onRecordingCopied(outputStream, failure);
+    }
+}
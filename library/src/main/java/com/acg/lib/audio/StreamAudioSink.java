@@ -0,0 +1,41 @@
+package com.acg.lib.audio;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams each recording to a consumer while it is being recorded
+ */
+public final class StreamAudioSink extends PipeAudioSink {
+
+    /**
+     * Provides a stream for each recording, and is told when it is complete, both on the sink's reader thread
+     */
+    public interface StreamProvider {
+
+        @NonNull OutputStream openStream() throws IOException;
+
+        /**
+         * The stream is not closed by the sink; the failure is null if the whole recording was written
+         */
+        void onStreamComplete(@NonNull OutputStream outputStream, IOException failure);
+    }
+
+    private final @NonNull StreamProvider streamProvider;
+
+    public StreamAudioSink(@NonNull StreamProvider streamProvider) {
+        this.streamProvider = streamProvider;
+    }
+
+    @Override
+    protected @NonNull OutputStream openOutputStream() throws IOException {
+        return streamProvider.openStream();
+    }
+
+    @Override
+    protected void onRecordingCopied(@NonNull OutputStream outputStream, IOException failure) {
+        streamProvider.onStreamComplete(outputStream, failure);
+    }
+}
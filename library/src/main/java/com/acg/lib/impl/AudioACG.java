@@ -1,10 +1,16 @@
 package com.acg.lib.impl;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.ColorStateList;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.media.MediaRecorder;
+import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -14,9 +20,19 @@ import android.widget.ToggleButton;
 import com.acg.ACGLib.R;
 import com.acg.lib.ACG;
 import com.acg.lib.ACGResourceAccessException;
+import com.acg.lib.audio.AudioEncoding;
+import com.acg.lib.audio.AudioOutputSink;
+import com.acg.lib.audio.AudioSegmentListener;
+import com.acg.lib.audio.FileAudioSink;
+import com.acg.lib.audio.PcmCapture;
+import com.acg.lib.audio.PcmStreamListener;
 import com.acg.lib.listeners.ResourceReadyListener;
+import com.acg.lib.memory.ACGMemory;
+import com.acg.lib.memory.Trimmable;
 import com.acg.lib.validation.bitmap.BitmapValidator;
-import com.acg.lib.validation.bitmap.StatefulBitmapValidator;
+import com.acg.lib.validation.bitmap.DeltaStatefulBitmapValidator;
+import com.acg.lib.validation.state.BitsetViewStateExtractor;
+import com.acg.lib.validation.state.ViewStateExtractor;
 import com.acg.lib.view.ValidatedViewWrapper;
 import com.google.common.base.Optional;
 
@@ -29,15 +45,70 @@ import static com.acg.lib.validation.ValidationParameters.DEFAULT_RANDOM_CHECK_I
 
 /**
  * OneTimeACG which grants one-time access to record audio for as long as the user intends, then saves it to the file system.
+ * Alternatively, it can record to another output sink, or stream PCM to a listener while the user records.
+ * The recorder is controlled on a media thread, and the toggle is disabled until the recorder has started or stopped.
  */
 public final class AudioACG extends ACG<File> {
 
     private MediaRecorder mediaRecorder;
-    private String outputFilePath;
-    private boolean resourceIsAvailable = false;
+    private volatile RecordingSettings settings = new RecordingSettings(AudioEncoding.AMR_NB_3GP, Optional.<AudioOutputSink>absent(),
+            NO_SEGMENTS, NO_SEGMENTS, Optional.<AudioSegmentListener>absent());
+    private RecordingSettings recordingSettings;
+    private AudioOutputSink recordingSink;
+    private volatile File outputFile;
+    private int segmentIndex;
+    private volatile boolean prewarmsRecorder = false;
+    private volatile boolean prewarmWindowIsOpen = false;
+    private volatile boolean isStarted = false;
+    private CompoundButton recordToggle;
+    private View recordWrapper;
+    private MediaRecorder preparedRecorder;
+    private FileAudioSink preparedSink;
+    private RecordingSettings preparedSettings;
+    private HandlerThread mediaThread;
+    private Handler mediaHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean resourceIsAvailable = false;
     private Optional<RecorderListener> recorderListener = Optional.absent();
+    private Optional<RecordFailureListener> recordFailureListener = Optional.absent();
+    private volatile Optional<PcmCapture> pcmCapture = Optional.absent();
 
-    private static final String OUTPUT_DIR = Environment.getExternalStorageDirectory().getAbsolutePath();
+    public static final int NO_SEGMENTS = 0;
+
+    private static final File OUTPUT_DIR = Environment.getExternalStorageDirectory();
+
+    // The toggle is rendered differently while the recorder is starting or stopping, so validate that too
+    private static final ViewStateExtractor TOGGLE_STATES = new BitsetViewStateExtractor(BitsetViewStateExtractor.CHECKED | BitsetViewStateExtractor.ENABLED);
+
+    /**
+     * The settings are changed from the caller's thread but used on the media thread, so each change makes a new
+     * snapshot, and the media thread records with the snapshot it reads when it starts
+     */
+    private static final class RecordingSettings {
+
+        private final @NonNull AudioEncoding audioEncoding;
+        private final @NonNull Optional<AudioOutputSink> outputSink;
+        private final int maxSegmentDurationMillis;
+        private final long maxSegmentSizeBytes;
+        private final @NonNull Optional<AudioSegmentListener> segmentListener;
+
+        private RecordingSettings(@NonNull AudioEncoding audioEncoding, @NonNull Optional<AudioOutputSink> outputSink,
+                                  int maxSegmentDurationMillis, long maxSegmentSizeBytes, @NonNull Optional<AudioSegmentListener> segmentListener) {
+            this.audioEncoding = audioEncoding;
+            this.outputSink = outputSink;
+            this.maxSegmentDurationMillis = maxSegmentDurationMillis;
+            this.maxSegmentSizeBytes = maxSegmentSizeBytes;
+            this.segmentListener = segmentListener;
+        }
+
+        private boolean isSegmented() {
+            return maxSegmentDurationMillis != NO_SEGMENTS || maxSegmentSizeBytes != NO_SEGMENTS;
+        }
+
+        private boolean recordsToFile() {
+            return !outputSink.isPresent() || outputSink.get() instanceof FileAudioSink;
+        }
+    }
 
     public interface RecorderListener extends ResourceReadyListener {
 
@@ -47,52 +118,463 @@ public final class AudioACG extends ACG<File> {
         void onRecordStarted();
     }
 
+    /**
+     * Implemented by a resource listener that wants to know when recording fails, such as when the recorder or the PCM
+     * capture can't start, or a take is too short to keep
+     */
+    public interface RecordFailureListener {
+
+        /**
+         * Called on the main thread, after the toggle was unchecked again
+         */
+        void onRecordFailed(@NonNull Exception cause);
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // Preparing, stopping and releasing the recorder can block for hundreds of ms, so keep it off the UI thread
+        mediaThread = new HandlerThread("ACG media");
+        mediaThread.start();
+        mediaHandler = new Handler(mediaThread.getLooper());
+    }
+
     protected void bindListeners(Context context) {
         super.bindListeners(context);
         if (resourceReadyListener instanceof RecorderListener) {
            recorderListener = Optional.of((RecorderListener) resourceReadyListener);
         }
+        if (resourceReadyListener instanceof RecordFailureListener) {
+            recordFailureListener = Optional.of((RecordFailureListener) resourceReadyListener);
+        }
     }
 
     /**
-     * Record audio from the microphone and put it into a local cache
+     * Stream PCM to the listener while recording, instead of recording to a file
+     * The toggle still starts and stops recording, but there is no file, so getResource is never available
+     */
+    public void setPcmStreamListener(@NonNull PcmStreamListener pcmStreamListener) {
+        setPcmCapture(new PcmCapture(pcmStreamListener));
+    }
+
+    /**
+     * Stream PCM with a capture that has its own sample rate, chunk size, and ring size
+     */
+    public void setPcmCapture(@NonNull PcmCapture pcmCapture) {
+        if (this.pcmCapture.isPresent()) {
+            postStopCapture(this.pcmCapture.get());
+        }
+        pcmCapture.setFailureListener(pcmCaptureFailure);
+        this.pcmCapture = Optional.of(pcmCapture);
+
+        // A prepared recorder would never be used, and would compete with the capture for the microphone
+        postDiscardPreparedRecorder();
+    }
+
+    /**
+     * Stop a capture behind any queued start, since stopping joins the capture thread, if the media thread is running
+     * yet; before that, nothing can have started the capture
+     */
+    private void postStopCapture(@NonNull final PcmCapture capture) {
+        if (mediaHandler == null) {
+            return;
+        }
+
+        mediaHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    capture.stop();
+                } catch (RuntimeException e) {
+                    // The record is released anyway, and the capture is over either way
+                }
+            }
+        });
+    }
+
+    /**
+     * Release a capture whose microphone failed, and report it like a recorder that failed
+     */
+    private final PcmCapture.FailureListener pcmCaptureFailure = new PcmCapture.FailureListener() {
+        @Override
+        public void onCaptureFailed(@NonNull PcmCapture capture, @NonNull Exception cause) {
+            postStopCapture(capture);
+            postRecordFailure(cause);
+        }
+    };
+
+    /**
+     * Record with another encoder, sample rate, or bit rate than AMR narrowband in a 3GP file
+     * AAC makes smaller files for the same quality, at the cost of more CPU while recording
+     */
+    public synchronized void setAudioEncoding(@NonNull AudioEncoding audioEncoding) {
+        RecordingSettings current = settings;
+        checkStreamable(audioEncoding, current.outputSink);
+        settings = new RecordingSettings(audioEncoding, current.outputSink,
+                current.maxSegmentDurationMillis, current.maxSegmentSizeBytes, current.segmentListener);
+    }
+
+    /**
+     * Record to a sink instead of a new file on external storage
+     * Only a FileAudioSink makes the recording available through getResource; other sinks deliver it themselves, and
+     * need a streamable encoding such as AudioEncoding.AAC_ADTS, so set the encoding first.
+     */
+    public synchronized void setOutputSink(@NonNull AudioOutputSink outputSink) {
+        RecordingSettings current = settings;
+        checkStreamable(current.audioEncoding, Optional.of(outputSink));
+        checkSegmentable(Optional.of(outputSink), current.segmentListener.isPresent());
+        settings = new RecordingSettings(current.audioEncoding, Optional.of(outputSink),
+                current.maxSegmentDurationMillis, current.maxSegmentSizeBytes, current.segmentListener);
+    }
+
+    /**
+     * Other sinks start over for each segment, which would throw away every segment but the last
+     */
+    private static void checkSegmentable(@NonNull Optional<AudioOutputSink> outputSink, boolean segmented) {
+        if (segmented && outputSink.isPresent() && !(outputSink.get() instanceof FileAudioSink)) {
+            throw new IllegalArgumentException("Only recordings to files can be segmented");
+        }
+    }
+
+    /**
+     * Fail on the caller's thread, instead of when the user taps to record
+     */
+    private static void checkStreamable(@NonNull AudioEncoding audioEncoding, @NonNull Optional<AudioOutputSink> outputSink) {
+        if (outputSink.isPresent() && outputSink.get().requiresStreamableEncoding() && !audioEncoding.isStreamable()) {
+            throw new IllegalArgumentException("Only streamable encodings can be recorded without a file");
+        }
+    }
+
+    /**
+     * Rotate to a new segment file every so many ms or bytes, whichever comes first, instead of recording one growing
+     * file
+     * Pass NO_SEGMENTS for either limit to ignore it. Each segment is announced to the listener, so a crash loses at
+     * most the segment being recorded, and getResource only returns the final segment. There is a short gap in the
+     * audio between segments while the next recorder starts. Only recordings to files can be segmented.
+     */
+    public synchronized void setSegmentation(int maxSegmentDurationMillis, long maxSegmentSizeBytes, @NonNull AudioSegmentListener segmentListener) {
+        RecordingSettings current = settings;
+        checkSegmentable(current.outputSink, true);
+        settings = new RecordingSettings(current.audioEncoding, current.outputSink,
+                maxSegmentDurationMillis, maxSegmentSizeBytes, Optional.of(segmentListener));
+    }
+
+    /**
+     * Prepare a recorder while the ACG is resumed, short of starting the microphone, so that a tap only has to start it
+     * and the first words aren't lost to setup
+     * The prepared recorder is released when the ACG stops or the app is under memory pressure. Only recordings to
+     * files are prepared ahead of time, since other sinks start their consumer when they are opened, and nothing is
+     * prepared while streaming PCM.
+     */
+    public void setPrewarmsRecorder(boolean prewarmsRecorder) {
+        this.prewarmsRecorder = prewarmsRecorder;
+        if (!prewarmsRecorder) {
+            postDiscardPreparedRecorder();
+        }
+    }
+
+    /**
+     * Record audio from the microphone into the output sink
      */
     private void startRecording() {
-        mediaRecorder = new MediaRecorder();
-        mediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-        mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.THREE_GPP);
-        mediaRecorder.setOutputFile(outputFilePath);
-        mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB);
+        recordingSettings = settings;
+        segmentIndex = 0;
+        startSegment();
+    }
+
+    /**
+     * Start a recorder for the next segment, which is the whole recording unless it is segmented
+     * Every segment is recorded with the settings the recording started with.
+     */
+    private void startSegment() {
+        // A prepared recorder is only used if nothing changed since it was prepared
+        if (preparedRecorder != null && preparedSettings == recordingSettings) {
+            mediaRecorder = preparedRecorder;
+            recordingSink = preparedSink;
+            preparedRecorder = null;
+            preparedSink = null;
+        } else {
+            discardPreparedRecorder();
+            recordingSink = recordingSettings.outputSink.isPresent() ? recordingSettings.outputSink.get() : new FileAudioSink(OUTPUT_DIR);
+            mediaRecorder = prepareRecorder(recordingSink, recordingSettings);
+        }
 
         try {
-            mediaRecorder.prepare();
+            mediaRecorder.start();
+        } catch (RuntimeException e) {
+            releaseRecorder();
+            throw e;
+        }
+    }
+
+    /**
+     * Build a recorder for the sink and prepare it, which is all the setup short of starting the microphone
+     */
+    private @NonNull MediaRecorder prepareRecorder(@NonNull AudioOutputSink sink, @NonNull RecordingSettings settings) {
+        MediaRecorder recorder = new MediaRecorder();
+
+        // Release the recorder and close the sink on any failure, so neither holds on to the mic or a pipe
+        boolean sinkIsOpen = false;
+        boolean prepared = false;
+        try {
+            recorder.setAudioSource(MediaRecorder.AudioSource.MIC);
+            settings.audioEncoding.applyTo(recorder);
+
+            if (settings.maxSegmentDurationMillis != NO_SEGMENTS) {
+                recorder.setMaxDuration(settings.maxSegmentDurationMillis);
+            }
+            if (settings.maxSegmentSizeBytes != NO_SEGMENTS) {
+                recorder.setMaxFileSize(settings.maxSegmentSizeBytes);
+            }
+            if (settings.isSegmented()) {
+                recorder.setOnInfoListener(segmentRotation);
+            }
+
+            sink.open(recorder, settings.audioEncoding);
+            sinkIsOpen = true;
+            recorder.prepare();
+            prepared = true;
         } catch (IOException e) {
             throw new RuntimeException("Failed to prepare the media recorder", e);
+        } finally {
+            if (!prepared) {
+                recorder.release();
+                if (sinkIsOpen) {
+                    sink.onRecordingStopped();
+                }
+            }
+        }
+
+        return recorder;
+    }
+
+    /**
+     * Prepare a recorder for the next recording on the media thread, if pre-warming and not already recording
+     */
+    private void prewarmRecorder() {
+        RecordingSettings currentSettings = settings;
+        if (!prewarmsRecorder || !prewarmWindowIsOpen || !currentSettings.recordsToFile() || pcmCapture.isPresent() || mediaRecorder != null || preparedRecorder != null) {
+            return;
+        }
+
+        FileAudioSink sink = currentSettings.outputSink.isPresent() ? (FileAudioSink) currentSettings.outputSink.get() : new FileAudioSink(OUTPUT_DIR);
+        try {
+            preparedRecorder = prepareRecorder(sink, currentSettings);
+        } catch (RuntimeException e) {
+            // Not fatal, since the recorder is prepared again on the tap, which reports the failure
+            return;
         }
 
-        mediaRecorder.start();
+        preparedSink = sink;
+        preparedSettings = currentSettings;
     }
 
+    /**
+     * Release a prepared recorder that was never started, and remove the empty file it opened
+     */
+    private void discardPreparedRecorder() {
+        if (preparedRecorder == null) {
+            return;
+        }
+
+        preparedRecorder.reset();
+        preparedRecorder.release();
+        preparedRecorder = null;
+
+        preparedSink.onRecordingStopped();
+        File unusedFile = preparedSink.getFile();
+        if (unusedFile != null) {
+            unusedFile.delete();
+        }
+        preparedSink = null;
+        preparedSettings = null;
+    }
+
+    /**
+     * Discard a prepared recorder behind any queued recorder work, if the media thread is running yet
+     */
+    private void postDiscardPreparedRecorder() {
+        if (mediaHandler == null) {
+            return;
+        }
+
+        mediaHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                discardPreparedRecorder();
+            }
+        });
+    }
+
+    /**
+     * A prepared recorder holds native buffers and the codec, so give it up under memory pressure
+     */
+    private final Trimmable preparedRecorderTrimmable = new Trimmable() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                postDiscardPreparedRecorder();
+            }
+        }
+
+        /**
+         * The recorder's memory is native, so it doesn't count against the memory cap
+         */
+        @Override
+        public long getRetainedByteCount() {
+            return 0;
+        }
+    };
+
     /**
      * Stop recording audio
      * It's good Android practice to release the recorder after using it, so you have to create a new one each time
      */
     private void stopRecording() {
-        mediaRecorder.stop();
+        try {
+            mediaRecorder.stop();
+        } catch (RuntimeException e) {
+            // A take too short to have any data can't be finished, so nothing was recorded
+            releaseRecorder();
+            if (recordingSink instanceof FileAudioSink) {
+                ((FileAudioSink) recordingSink).getFile().delete();
+            }
+            throw e;
+        }
+
+        // The sink only has the whole recording once the recorder stopped writing to it
+        releaseRecorder();
+        sendSegment();
+    }
+
+    /**
+     * Release the recorder, which may be in any state, and tell the sink that it stopped
+     */
+    private void releaseRecorder() {
         mediaRecorder.reset();
         mediaRecorder.release();
         mediaRecorder = null;
+        recordingSink.onRecordingStopped();
+    }
+
+    /**
+     * Uncheck the toggle without recording again and let it be tapped, then report the failure, all on the main thread
+     */
+    private void postRecordFailure(@NonNull final Exception cause) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (recordToggle != null) {
+                    recordToggle.setOnCheckedChangeListener(null);
+                    recordToggle.setChecked(false);
+                    recordToggle.setOnCheckedChangeListener(toggleListener);
+                    setToggleEnabled(recordToggle, true);
+                }
+
+                if (isStarted && recordFailureListener.isPresent()) {
+                    recordFailureListener.get().onRecordFailed(cause);
+                }
+            }
+        });
+    }
+
+    /**
+     * Once a segment reaches its limit, the recorder has already stopped and finished the file, so start the next one
+     */
+    private final MediaRecorder.OnInfoListener segmentRotation = new MediaRecorder.OnInfoListener() {
+        @Override
+        public void onInfo(MediaRecorder recorder, int what, int extra) {
+            boolean limitReached = what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED ||
+                    what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_REACHED;
+
+            // Ignore a recorder that was already stopped by the user
+            if (!limitReached || recorder != mediaRecorder) {
+                return;
+            }
+
+            releaseRecorder();
+            sendSegment();
+
+            segmentIndex++;
+            try {
+                startSegment();
+            } catch (RuntimeException e) {
+                postRecordFailure(e);
+            }
+        }
+    };
+
+    /**
+     * Announce the finished segment on the main thread, in order with the rest of the events
+     */
+    private void sendSegment() {
+        if (recordingSettings.segmentListener.isPresent() && recordingSink instanceof FileAudioSink) {
+            final AudioSegmentListener listener = recordingSettings.segmentListener.get();
+            final int finishedSegmentIndex = segmentIndex;
+            final File segment = ((FileAudioSink) recordingSink).getFile();
+
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onSegmentFinished(finishedSegmentIndex, segment);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        isStarted = true;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        prewarmWindowIsOpen = true;
+        if (prewarmsRecorder) {
+            ACGMemory.addTrimmable(preparedRecorderTrimmable);
+            mediaHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    prewarmRecorder();
+                }
+            });
+        }
     }
 
     @Override
     public void onStop() {
         super.onStop();
+        isStarted = false;
+        prewarmWindowIsOpen = false;
+        ACGMemory.removeTrimmable(preparedRecorderTrimmable);
 
-        if (mediaRecorder != null) {
-            mediaRecorder.reset();
-            mediaRecorder.release();
-            mediaRecorder = null;
+        if (pcmCapture.isPresent()) {
+            postStopCapture(pcmCapture.get());
         }
+
+        // Queued behind any start, so that a recorder that is still starting is released too
+        mediaHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                discardPreparedRecorder();
+
+                if (mediaRecorder != null) {
+                    releaseRecorder();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        // Let queued recorder work finish before the thread goes away
+        mediaThread.quitSafely();
     }
 
     /**
@@ -119,7 +601,7 @@ public final class AudioACG extends ACG<File> {
             bitmapsForViews.put((ValidatedViewWrapper) view, Collections.singletonList(getBitmapForView(view)));
         }
 
-        return new StatefulBitmapValidator(bitmapsForViews);
+        return new DeltaStatefulBitmapValidator(bitmapsForViews);
     }
 
     /**
@@ -129,16 +611,19 @@ public final class AudioACG extends ACG<File> {
     protected @NonNull List<View> renderViewsInIsolation(@NonNull Context context) {
         List<View> views = new ArrayList<>();
 
-        // Default state
-        ToggleButton toggleButton = buildToggleButton(context);
-        View wrapper = new ValidatedViewWrapper(context, toggleButton, noopValidationArgs, noopValidator);
-        views.add(wrapper);
-
-        // Checked state
-        ToggleButton checkedToggleButton = buildToggleButton(context);
-        View checkedWrapper = new ValidatedViewWrapper(context, checkedToggleButton, noopValidationArgs, noopValidator);
-        checkedWrapper.performClick();
-        views.add(checkedWrapper);
+        // Default and checked states, then the same while the recorder is stopping or starting
+        for (boolean enabled : new boolean[] { true, false }) {
+            ToggleButton toggleButton = buildToggleButton(context);
+            View wrapper = new ValidatedViewWrapper(context, toggleButton, noopValidationArgs, noopValidator, TOGGLE_STATES);
+            toggleButton.setEnabled(enabled);
+            views.add(wrapper);
+
+            ToggleButton checkedToggleButton = buildToggleButton(context);
+            View checkedWrapper = new ValidatedViewWrapper(context, checkedToggleButton, noopValidationArgs, noopValidator, TOGGLE_STATES);
+            checkedWrapper.performClick();
+            checkedToggleButton.setEnabled(enabled);
+            views.add(checkedWrapper);
+        }
 
         return views;
     }
@@ -153,39 +638,139 @@ public final class AudioACG extends ACG<File> {
         toggleButton.setTextOff(getString(R.string.audio_acg_text_on));
         toggleButton.setLayoutParams(new ViewGroup.LayoutParams(700, 200));
         toggleButton.setBackgroundColor(Color.BLACK);
-        toggleButton.setTextColor(Color.WHITE);
+        toggleButton.setTextColor(new ColorStateList(
+                new int[][] { new int[] { -android.R.attr.state_enabled }, new int[0] },
+                new int[] { Color.GRAY, Color.WHITE }));
         return toggleButton;
     }
 
     /**
-     * Inflate and build the fragment
+     * Start or stop recording on the media thread, keeping the toggle disabled until that is done
      */
-    @Override
-    protected @NonNull View buildView(@NonNull LayoutInflater inflater, @NonNull ViewGroup container) {
-        final ViewGroup inflatedContainer  = (ViewGroup) inflater.inflate(R.layout.audio_acg_fragment, container, false);
-
-        // Create button listener
-        CompoundButton.OnCheckedChangeListener listener = new CompoundButton.OnCheckedChangeListener() {
-            @Override
-            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+    private final CompoundButton.OnCheckedChangeListener toggleListener = new CompoundButton.OnCheckedChangeListener() {
+        @Override
+        public void onCheckedChanged(final CompoundButton buttonView, boolean isChecked) {
+            if (pcmCapture.isPresent()) {
+                final PcmCapture capture = pcmCapture.get();
+                setToggleEnabled(buttonView, false);
                 if (isChecked) {
-                    outputFilePath = String.format("%s/audio_acg_output%s.3gp", OUTPUT_DIR, UUID.randomUUID());
-                    startRecording();
-                    sendRecordEvent();
+                    mediaHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                capture.start();
+                            } catch (RuntimeException e) {
+                                postRecordFailure(e);
+                                return;
+                            }
+
+                            mainHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    setToggleEnabled(buttonView, true);
+                                    if (isStarted) {
+                                        sendRecordEvent();
+                                    }
+                                }
+                            });
+                        }
+                    });
                 } else {
-                    stopRecording();
-                    sendResource();
+                    mediaHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                capture.stop();
+                            } catch (RuntimeException e) {
+                                postRecordFailure(e);
+                                return;
+                            }
+
+                            mainHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    setToggleEnabled(buttonView, true);
+                                }
+                            });
+                        }
+                    });
                 }
+            } else if (isChecked) {
+                setToggleEnabled(buttonView, false);
+                mediaHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            startRecording();
+                        } catch (RuntimeException e) {
+                            postRecordFailure(e);
+                            return;
+                        }
+
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                setToggleEnabled(buttonView, true);
+                                if (isStarted) {
+                                    sendRecordEvent();
+                                }
+                            }
+                        });
+                    }
+                });
+            } else {
+                setToggleEnabled(buttonView, false);
+                mediaHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The recorder is already gone if the ACG was stopped while recording
+                        boolean wasRecording = mediaRecorder != null;
+                        if (wasRecording) {
+                            try {
+                                stopRecording();
+                            } catch (RuntimeException e) {
+                                postRecordFailure(e);
+                                wasRecording = false;
+                            }
+                        }
+
+                        // Get the next recording ready while the user is still here
+                        prewarmRecorder();
+
+                        // Recordings that don't go to a file are delivered by their sink
+                        final File recordedFile = wasRecording && recordingSink instanceof FileAudioSink ? ((FileAudioSink) recordingSink).getFile() : null;
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                setToggleEnabled(buttonView, true);
+                                if (recordedFile != null && isStarted) {
+                                    outputFile = recordedFile;
+                                    sendResource();
+                                }
+                            }
+                        });
+                    }
+                });
             }
-        };
+        }
+    };
+
+    /**
+     * Inflate and build the fragment
+     */
+    @Override
+    protected @NonNull View buildView(@NonNull LayoutInflater inflater, @NonNull ViewGroup container) {
+        final ViewGroup inflatedContainer  = (ViewGroup) inflater.inflate(R.layout.audio_acg_fragment, container, false);
 
         // Build button
         Context context = inflatedContainer.getContext();
         ToggleButton toggleButton = buildToggleButton(context);
-        toggleButton.setOnCheckedChangeListener(listener);
+        toggleButton.setOnCheckedChangeListener(toggleListener);
+        recordToggle = toggleButton;
 
         // Build the wrapper
-        View wrapper = new ValidatedViewWrapper(context, toggleButton, validationArguments, validator);
+        View wrapper = new ValidatedViewWrapper(context, toggleButton, validationArguments, validator, TOGGLE_STATES);
+        recordWrapper = wrapper;
         wrapper.setId(R.id.audio_acg_button_id);
 
         // Add wrapper to view
@@ -193,6 +778,17 @@ public final class AudioACG extends ACG<File> {
         return inflatedContainer;
     }
 
+    /**
+     * Show or clear the pending state
+     * The wrapper only redraws by itself after events, so redraw it for changes made later from posted work.
+     */
+    private void setToggleEnabled(@NonNull CompoundButton toggle, boolean enabled) {
+        toggle.setEnabled(enabled);
+        if (recordWrapper != null) {
+            recordWrapper.invalidate();
+        }
+    }
+
     protected void sendRecordEvent() {
         if (recorderListener.isPresent()) {
             recorderListener.get().onRecordStarted();
@@ -207,13 +803,23 @@ public final class AudioACG extends ACG<File> {
 
     /**
      * Access the resource, given an input resource
+     * A segmented recording only gives the final segment here; the others were announced as they finished.
      */
     @Override
     public File getResource() throws ACGResourceAccessException {
         if (resourceIsAvailable) {
-            return new File(outputFilePath);
+            return outputFile;
         }
 
         throw new ACGResourceAccessException("Resource is not available");
     }
+
+    @Override
+    public @NonNull Optional<File> tryGetResource() {
+        if (resourceIsAvailable) {
+            return Optional.of(outputFile);
+        }
+
+        return Optional.absent();
+    }
 }
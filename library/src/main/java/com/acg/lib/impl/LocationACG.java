@@ -6,9 +6,9 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.os.Bundle;
+import android.os.Build;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
-import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -18,13 +18,16 @@ import android.widget.ToggleButton;
 import com.acg.ACGLib.R;
 import com.acg.lib.ACGResourceAccessException;
 import com.acg.lib.PermanentAccessACG;
+import com.acg.lib.location.LocationHub;
+import com.acg.lib.location.PersistedFixStore;
 import com.acg.lib.model.Location;
+import com.acg.lib.model.LocationSnapshot;
 import com.acg.lib.validation.bitmap.BitmapValidator;
-import com.acg.lib.validation.bitmap.StatefulBitmapValidator;
+import com.acg.lib.validation.bitmap.DeltaStatefulBitmapValidator;
 import com.acg.lib.view.ValidatedViewWrapper;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.LocationListener;
+import com.google.android.gms.location.LocationRequest;
+import com.google.common.base.Optional;
 
 import java.util.*;
 
@@ -33,20 +36,54 @@ import static com.acg.lib.validation.ValidationParameters.DEFAULT_RANDOM_CHECK_I
 /**
  * OneTimeACG which accesses a location allows a user to toggle location access.
  */
-public final class LocationACG extends PermanentAccessACG<Location> implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
-
-    private GoogleApiClient googleApiClient;
+public final class LocationACG extends PermanentAccessACG<Location> implements LocationHub.ConnectionListener {
+
+    private static final String PERSISTED_PROVIDER = "persisted";
+
+    public static final long NO_CACHE = 0;
+
+    // Location permission, checked once and then kept up to date, instead of checked on every access
+    private static final int PERMISSION_UNKNOWN = 0;
+    private static final int PERMISSION_GRANTED = 1;
+    private static final int PERMISSION_DENIED = 2;
+    private static final int PERMISSION_REQUESTED = 3;
+
+    private LocationHub locationHub;
+    private volatile boolean acquiredLocationHub = false;
+    private volatile boolean persistsLastFix = false;
+    private volatile PersistedFixStore persistedFixStore;
+    private volatile long cacheTtlMillis = NO_CACHE;
+    private volatile CachedLocation cachedLocation;
+    private volatile int permissionState = PERMISSION_UNKNOWN;
+
+    // Asks for no fixes of its own, but sees fixes that others ask for, so that the cache notices them and they persist
+    private static final LocationRequest PASSIVE_REQUEST = new LocationRequest()
+            .setPriority(LocationRequest.PRIORITY_NO_POWER)
+            .setFastestInterval(0);
+
+    private final LocationListener passiveFixListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(android.location.Location location) {
+            // The hub counts every fix, which is all the cache needs, but the fix is persisted as it arrives
+            PersistedFixStore fixStore = persistedFixStore;
+            if (persistsLastFix && fixStore != null) {
+                fixStore.write(location);
+            }
+        }
+    };
 
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
-        buildGoogleApiClient(context);
+        locationHub = LocationHub.getInstance(context);
+        openPersistedFixStore(context);
     }
 
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
-        buildGoogleApiClient(activity);
+        locationHub = LocationHub.getInstance(activity);
+        openPersistedFixStore(activity);
     }
 
     @Override
@@ -57,29 +94,116 @@ public final class LocationACG extends PermanentAccessACG<Location> implements G
             bitmapsForViews.put((ValidatedViewWrapper) view, Collections.singletonList(getBitmapForView(view)));
         }
 
-        return new StatefulBitmapValidator(bitmapsForViews);
+        return new DeltaStatefulBitmapValidator(bitmapsForViews);
+    }
+
+    /**
+     * Serve the same location for up to this long in ms, unless a new fix arrives sooner, so that frequent reads
+     * don't each query the location service
+     * While caching, the ACG passively watches for fixes that are requested by others, which costs no power. This must
+     * be called on the main thread.
+     */
+    public void setCacheTtl(long cacheTtlMillis) {
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.cachedLocation = null;
+
+        if (acquiredLocationHub) {
+            updatePassiveRequest();
+        }
+    }
+
+    /**
+     * Watch for new fixes while caching or persisting, so that a new fix invalidates the cache before the TTL runs out,
+     * and is persisted even if nobody reads it
+     */
+    private void updatePassiveRequest() {
+        if (acquiredLocationHub && (cacheTtlMillis > NO_CACHE || persistsLastFix)) {
+            locationHub.requestUpdates(passiveFixListener, PASSIVE_REQUEST);
+        } else {
+            locationHub.removeUpdates(passiveFixListener);
+        }
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        // The permission may have changed while we were in the background, or in a permission dialog
+        refreshPermissionState();
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        refreshPermissionState();
+    }
+
+    private void refreshPermissionState() {
+        Activity activity = getActivity();
+        if (activity != null) {
+            boolean granted = ContextCompat.checkSelfPermission(activity, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+            permissionState = granted ? PERMISSION_GRANTED : PERMISSION_DENIED;
+        }
+    }
+
+    private boolean hasPermission() {
+        if (permissionState == PERMISSION_UNKNOWN) {
+            refreshPermissionState();
+        }
+        return permissionState == PERMISSION_GRANTED;
     }
 
     /**
-     * Create an instance of the Google API Client
+     * Persist the most recent fix, and serve it as a stale location while the location connection comes up
+     * It is only served while the user has location toggled on, and location permission is granted. While persisting,
+     * the ACG passively watches for fixes, like while caching. This must be called on the main thread.
      */
-    private synchronized void buildGoogleApiClient(Context context) {
-        googleApiClient = new GoogleApiClient.Builder(context)
-                .addApi(LocationServices.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .build();
+    public void setPersistsLastFix(boolean persistsLastFix) {
+        this.persistsLastFix = persistsLastFix;
+        if (persistsLastFix && getActivity() != null) {
+            openPersistedFixStore(getActivity());
+        }
+
+        if (acquiredLocationHub) {
+            updatePassiveRequest();
+        }
+    }
+
+    private void openPersistedFixStore(@NonNull Context context) {
+        if (persistsLastFix && persistedFixStore == null) {
+            persistedFixStore = PersistedFixStore.getInstance(context);
+        }
+    }
+
+    /**
+     * Start or stop using the shared location connection
+     */
+    private void setAcquiredLocationHub(boolean acquire) {
+        if (acquire && !acquiredLocationHub) {
+            acquiredLocationHub = true;
+            locationHub.acquire(this);
+            updatePassiveRequest();
+
+            // Serve the persisted fix right away, unless the connection already came up
+            if (!locationHub.isConnected() && persistedFix() != null) {
+                resourceAvailabilityListener.onResourceReady();
+            }
+        } else if (!acquire && acquiredLocationHub) {
+            acquiredLocationHub = false;
+            updatePassiveRequest();
+            locationHub.release(this);
+        }
     }
 
     protected boolean resourceIsAvailable() {
-        return googleApiClient.isConnected();
+        return acquiredLocationHub && locationHub.isConnected();
     }
 
     @Override
     public void onStop() {
         super.onStop();
-        if (googleApiClient != null && googleApiClient.isConnected()) {
-            googleApiClient.disconnect();
+        if (locationHub != null) {
+            setAcquiredLocationHub(false);
         }
     }
 
@@ -100,23 +224,18 @@ public final class LocationACG extends PermanentAccessACG<Location> implements G
     }
 
     /**
-     * Connection callbacks for the underlying location API
+     * Connection callbacks for the shared location connection
      */
     @Override
-    public void onConnected(Bundle bundle) {
+    public void onLocationConnected() {
         resourceAvailabilityListener.onResourceReady();
     }
 
     @Override
-    public void onConnectionSuspended(int i) {
+    public void onLocationSuspended() {
         resourceAvailabilityListener.onResourceUnavailable();
     }
 
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
-        throw new RuntimeException("Connection failed");
-    }
-
     /**
      * Render the view in isolation in any possible states to populate bitmaps
      */
@@ -167,11 +286,7 @@ public final class LocationACG extends PermanentAccessACG<Location> implements G
         CompoundButton.OnCheckedChangeListener listener = new CompoundButton.OnCheckedChangeListener() {
             @Override
             public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                if (isChecked) {
-                    googleApiClient.connect();
-                } else {
-                    googleApiClient.disconnect();
-                }
+                setAcquiredLocationHub(isChecked);
             }
         };
 
@@ -195,21 +310,119 @@ public final class LocationACG extends PermanentAccessACG<Location> implements G
     @Override
     public Location getResource() throws ACGResourceAccessException {
         if (!resourceIsAvailable()) {
+            Location persistedFix = persistedFix();
+            if (persistedFix != null) {
+                return persistedFix;
+            }
             throw new ACGResourceAccessException("Resource is not available");
         }
 
-        // Android 23 compatibility
-        Activity activity = getActivity();
-        if (ContextCompat.checkSelfPermission(activity, Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
-            ActivityCompat.requestPermissions(activity, new String[]{Manifest.permission.ACCESS_COARSE_LOCATION}, 1);
+        Location location = lastLocation();
+
+        if (location == null) {
+            throw new RuntimeException("Unexpected error getting location from LocationServices");
+        }
+
+        return location;
+    }
+
+    /**
+     * Never throws, so without permission, or if the location service fails, the location is absent
+     */
+    @Override
+    public @NonNull Optional<Location> tryGetResource() {
+        if (!resourceIsAvailable()) {
+            return Optional.fromNullable(persistedFix());
+        }
+
+        if (!hasPermission()) {
+            requestPermissionOnce();
+            return Optional.absent();
+        }
+
+        try {
+            return Optional.fromNullable(lastLocation());
+        } catch (RuntimeException e) {
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * Android 23 compatibility, asking only once until the permission state is refreshed
+     * The fragment asks, so that the result comes back to onRequestPermissionsResult. Before Android 23, the
+     * permission is granted at install time.
+     */
+    private void requestPermissionOnce() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !hasPermission() && permissionState == PERMISSION_DENIED) {
+            Activity activity = getActivity();
+            if (activity != null) {
+                permissionState = PERMISSION_REQUESTED;
+                activity.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isAdded()) {
+                            requestPermissions(new String[]{Manifest.permission.ACCESS_COARSE_LOCATION}, 1);
+                        }
+                    }
+                });
+            }
         }
+    }
 
-        android.location.Location location = LocationServices.FusedLocationApi.getLastLocation(googleApiClient);
+    /**
+     * Get the last known location, which may be called from any thread
+     */
+    private Location lastLocation() {
+        requestPermissionOnce();
+
+        // Serve the cached location while it is fresh and no new fix arrived
+        long fixCount = locationHub.getFixCount();
+        long nowTimeStamp = SystemClock.elapsedRealtime();
+        CachedLocation cached = cachedLocation;
+        if (cached != null && cached.fixCount == fixCount && nowTimeStamp - cached.cachedTimeStamp < cacheTtlMillis) {
+            return cached.location;
+        }
 
+        android.location.Location location = locationHub.getLastLocation();
         if (location == null) {
-            throw new RuntimeException("Unexpected error getting location from LocationServices");
+            return null;
+        }
+
+        PersistedFixStore fixStore = persistedFixStore;
+        if (persistsLastFix && fixStore != null) {
+            fixStore.write(location);
+        }
+
+        // Keep the same instance if the location service still has the same fix
+        Location resource = cached != null && cached.location.getTime() == location.getTime() ? cached.location : new Location(location);
+        if (cacheTtlMillis > NO_CACHE) {
+            cachedLocation = new CachedLocation(resource, fixCount, nowTimeStamp);
+        }
+        return resource;
+    }
+
+    private static final class CachedLocation {
+        private final @NonNull Location location;
+        private final long fixCount;
+        private final long cachedTimeStamp;
+
+        private CachedLocation(@NonNull Location location, long fixCount, long cachedTimeStamp) {
+            this.location = location;
+            this.fixCount = fixCount;
+            this.cachedTimeStamp = cachedTimeStamp;
+        }
+    }
+
+    /**
+     * The persisted fix as a stale location, if it may be served
+     */
+    private Location persistedFix() {
+        PersistedFixStore fixStore = persistedFixStore;
+        if (!persistsLastFix || fixStore == null || !acquiredLocationHub || !hasPermission()) {
+            return null;
         }
 
-        return new Location(location);
+        LocationSnapshot snapshot = fixStore.read();
+        return snapshot == null ? null : new Location(snapshot.toLocation(PERSISTED_PROVIDER), true);
     }
 }
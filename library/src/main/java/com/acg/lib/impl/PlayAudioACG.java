@@ -1,6 +1,7 @@
 package com.acg.lib.impl;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.media.MediaPlayer;
 import android.support.annotation.NonNull;
@@ -12,13 +13,12 @@ import com.acg.ACGLib.R;
 import com.acg.lib.ACGResourceAccessException;
 import com.acg.lib.ComposableACG;
 import com.acg.lib.validation.bitmap.BitmapValidator;
-import com.acg.lib.validation.bitmap.SingleBitmapValidator;
+import com.acg.lib.validation.bitmap.CompactStatefulBitmapValidator;
 import com.acg.lib.view.ValidatedViewWrapper;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 import static com.acg.lib.validation.ValidationParameters.DEFAULT_RANDOM_CHECK_INTERVAL;
 import static com.acg.lib.validation.ValidationParameters.DEFAULT_RANDOM_CHECK_INVALIDATION;
@@ -38,7 +38,13 @@ public final class PlayAudioACG extends ComposableACG<File, Void> {
 
     @Override
     protected BitmapValidator initBitmapValidator(@NonNull List<View> views) {
-        return new SingleBitmapValidator(getBitmapForView(views.get(0)));
+        Map<ValidatedViewWrapper, List<Bitmap>> bitmapsForViews = new HashMap<>();
+
+        for (View view : views) {
+            bitmapsForViews.put((ValidatedViewWrapper) view, Collections.singletonList(getBitmapForView(view)));
+        }
+
+        return new CompactStatefulBitmapValidator(bitmapsForViews);
     }
 
     /**
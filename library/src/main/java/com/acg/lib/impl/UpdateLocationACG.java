@@ -7,6 +7,8 @@ import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
@@ -18,22 +20,29 @@ import android.widget.ToggleButton;
 import com.acg.ACGLib.R;
 import com.acg.lib.ACGResourceAccessException;
 import com.acg.lib.PermanentAccessACG;
+import com.acg.lib.location.AdaptiveLocationPolicy;
+import com.acg.lib.location.LocationHub;
 import com.acg.lib.model.Location;
+import com.acg.lib.model.LocationHistory;
+import com.acg.lib.subscription.DeliveryMode;
+import com.acg.lib.subscription.ResourceBatcher;
+import com.acg.lib.subscription.ResourcePublisher;
+import com.acg.lib.subscription.ResourceSubscriber;
+import com.acg.lib.subscription.ResourceSubscription;
 import com.acg.lib.validation.bitmap.BitmapValidator;
-import com.acg.lib.validation.bitmap.StatefulBitmapValidator;
+import com.acg.lib.validation.bitmap.DeltaStatefulBitmapValidator;
 import com.acg.lib.view.ValidatedViewWrapper;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.location.LocationListener;
 import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationServices;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import static com.acg.lib.validation.ValidationParameters.DEFAULT_RANDOM_CHECK_INTERVAL;
 import static com.acg.lib.validation.ValidationParameters.DEFAULT_RANDOM_CHECK_INVALIDATION;
@@ -44,29 +53,59 @@ import static com.acg.lib.validation.ValidationParameters.DEFAULT_RANDOM_CHECK_I
  * Right now uses coarse location/balanced power, can make more customizable later
  * If this is common outside of location, we should expose an "updating" ACG as a different kind
  */
-public final class UpdateLocationACG extends PermanentAccessACG<Location> implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener, LocationListener {
-    private GoogleApiClient googleApiClient;
+public final class UpdateLocationACG extends PermanentAccessACG<Location> implements LocationHub.ConnectionListener, LocationListener {
+    private LocationHub locationHub;
+    private volatile boolean acquiredLocationHub = false;
     private Optional<Long> interval = Optional.absent();
     private Optional<Long> fastestInterval = Optional.absent();
     private Optional<Float> smallestDisplacement = Optional.absent();
-    private Location location;
+    private Optional<Long> maxWaitTime = Optional.absent();
+    private Optional<Integer> maxBatchSize = Optional.absent();
+    private volatile Location location;
+    private final ResourcePublisher<Location> locationPublisher = new ResourcePublisher<>();
+    private final ResourcePublisher<List<Location>> batchPublisher = new ResourcePublisher<>();
+    private ResourceBatcher<Location> batcher;
+    private Optional<LocationHistory> locationHistory = Optional.absent();
+    private Optional<AdaptiveLocationPolicy> adaptivePolicy = Optional.absent();
 
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
-        buildGoogleApiClient(context);
+        locationHub = LocationHub.getInstance(context);
     }
 
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
-        buildGoogleApiClient(activity);
+        locationHub = LocationHub.getInstance(activity);
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // While batching, tell the availability listener once per batch
+        batchPublisher.subscribe(new ResourceSubscriber<List<Location>>() {
+            @Override
+            public void onSubscribe(@NonNull ResourceSubscription subscription) {
+                subscription.request(ResourceSubscription.UNBOUNDED);
+            }
+
+            @Override
+            public void onResource(@NonNull List<Location> batch) {
+                resourceAvailabilityListener.onResourceReady();
+            }
+
+            @Override
+            public void onResourceUnavailable() {
+            }
+        }, MoreExecutors.directExecutor(), DeliveryMode.ALL);
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        if (googleApiClient.isConnected()) {
+        if (acquiredLocationHub && locationHub.isConnected()) {
             startLocationUpdates();
         }
     }
@@ -79,29 +118,34 @@ public final class UpdateLocationACG extends PermanentAccessACG<Location> implem
             bitmapsForViews.put((ValidatedViewWrapper) view, Collections.singletonList(getBitmapForView(view)));
         }
 
-        return new StatefulBitmapValidator(bitmapsForViews);
+        return new DeltaStatefulBitmapValidator(bitmapsForViews);
     }
 
     /**
-     * Create an instance of the Google API Client
+     * Start or stop using the shared location connection, stopping updates before letting go of it
      */
-    private synchronized void buildGoogleApiClient(Context context) {
-        googleApiClient = new GoogleApiClient.Builder(context)
-                .addApi(LocationServices.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .build();
+    private void setAcquiredLocationHub(boolean acquire) {
+        if (acquire && !acquiredLocationHub) {
+            acquiredLocationHub = true;
+            locationHub.acquire(this);
+        } else if (!acquire && acquiredLocationHub) {
+            if (locationHub.isConnected()) {
+                stopLocationUpdates();
+            }
+            acquiredLocationHub = false;
+            locationHub.release(this);
+        }
     }
 
     protected boolean resourceIsAvailable() {
-        return googleApiClient.isConnected() && location != null;
+        return acquiredLocationHub && locationHub.isConnected() && location != null;
     }
 
     @Override
     public void onStop() {
         super.onStop();
-        if (googleApiClient != null && googleApiClient.isConnected()) {
-            googleApiClient.disconnect();
+        if (locationHub != null) {
+            setAcquiredLocationHub(false);
         }
     }
 
@@ -122,23 +166,18 @@ public final class UpdateLocationACG extends PermanentAccessACG<Location> implem
     }
 
     /**
-     * Connection callbacks for the underlying location API
+     * Connection callbacks for the shared location connection
      */
     @Override
-    public void onConnected(Bundle bundle) {
+    public void onLocationConnected() {
         startLocationUpdates();
     }
 
     @Override
-    public void onConnectionSuspended(int i) {
+    public void onLocationSuspended() {
         stopLocationUpdates();
     }
 
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
-        throw new RuntimeException("Connection failed");
-    }
-
     /**
      * Render the view in isolation in any possible states to populate bitmaps
      */
@@ -187,11 +226,7 @@ public final class UpdateLocationACG extends PermanentAccessACG<Location> implem
         CompoundButton.OnCheckedChangeListener listener = new CompoundButton.OnCheckedChangeListener() {
             @Override
             public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                if (isChecked) {
-                    googleApiClient.connect();
-                } else {
-                    googleApiClient.disconnect();
-                }
+                setAcquiredLocationHub(isChecked);
             }
         };
 
@@ -221,6 +256,70 @@ public final class UpdateLocationACG extends PermanentAccessACG<Location> implem
         this.smallestDisplacement = Optional.of(smallestDisplacement);
     }
 
+    /**
+     * Batch locations over a window in ms: the location service may hold fixes for up to this long, and they are
+     * delivered to batch subscribers together
+     * The location service is shared, so it only holds fixes back while no other location ACG needs each fix as it
+     * comes; batch subscribers still get a batch per window either way.
+     */
+    public void setMaxWaitTime(long maxWaitTime) {
+        this.maxWaitTime = Optional.of(maxWaitTime);
+    }
+
+    /**
+     * Batch locations up to a count, delivering the batch to batch subscribers as soon as it is full
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = Optional.of(maxBatchSize);
+    }
+
+    /**
+     * Adapt the interval and priority to how fast the device is moving, instead of using the fixed interval
+     * The request is only issued again when the policy moves to another tier
+     */
+    public void setAdaptivePolicy(@NonNull AdaptiveLocationPolicy adaptivePolicy) {
+        this.adaptivePolicy = Optional.of(adaptivePolicy);
+    }
+
+    /**
+     * Keep a history of up to this many locations, which can be read through getLocationHistory
+     */
+    public void setHistoryCapacity(int historyCapacity) {
+        this.locationHistory = Optional.of(new LocationHistory(historyCapacity));
+    }
+
+    public @NonNull Optional<LocationHistory> getLocationHistory() {
+        return locationHistory;
+    }
+
+    private boolean batchesLocations() {
+        return maxWaitTime.isPresent() || maxBatchSize.isPresent();
+    }
+
+    /**
+     * Subscribe to locations as they arrive, so there's no need to pull them with getResource
+     * Locations are delivered on the executor, and a subscriber that falls behind in DeliveryMode.CONFLATED only
+     * gets the newest one
+     */
+    public @NonNull ResourceSubscription subscribe(@NonNull ResourceSubscriber<Location> subscriber, @NonNull Executor executor, @NonNull DeliveryMode deliveryMode) {
+        return locationPublisher.subscribe(subscriber, executor, deliveryMode);
+    }
+
+    /**
+     * Subscribe to the newest location, delivered on the thread that receives updates
+     */
+    public @NonNull ResourceSubscription subscribe(@NonNull ResourceSubscriber<Location> subscriber) {
+        return subscribe(subscriber, MoreExecutors.directExecutor(), DeliveryMode.CONFLATED);
+    }
+
+    /**
+     * Subscribe to batches of locations, which are only published if a max wait time or batch size is set
+     * While batching, the availability listener is also only told about each batch instead of each location
+     */
+    public @NonNull ResourceSubscription subscribeBatches(@NonNull ResourceSubscriber<List<Location>> subscriber, @NonNull Executor executor, @NonNull DeliveryMode deliveryMode) {
+        return batchPublisher.subscribe(subscriber, executor, deliveryMode);
+    }
+
     protected void startLocationUpdates() {
         // Android 23 compatibility
         Activity activity = getActivity();
@@ -228,6 +327,23 @@ public final class UpdateLocationACG extends PermanentAccessACG<Location> implem
             ActivityCompat.requestPermissions(activity, new String[]{Manifest.permission.ACCESS_COARSE_LOCATION}, 1);
         }
 
+        // Fixes held back by the location service still arrive one by one, so gather them again on our side
+        if (batcher != null) {
+            batcher.flush();
+            batcher = null;
+        }
+        if (batchesLocations()) {
+            batcher = new ResourceBatcher<>(batchPublisher, new Handler(Looper.getMainLooper()),
+                    maxWaitTime.or(ResourceBatcher.NO_WINDOW), maxBatchSize.or(Integer.MAX_VALUE));
+        }
+
+        requestLocationUpdates();
+    }
+
+    /**
+     * Issue the location request, which replaces any earlier request, since the listener is the same
+     */
+    private void requestLocationUpdates() {
         LocationRequest request = new LocationRequest();
         if (interval.isPresent()) {
             request.setInterval(interval.get());
@@ -238,12 +354,25 @@ public final class UpdateLocationACG extends PermanentAccessACG<Location> implem
         if (smallestDisplacement.isPresent()) {
             request.setSmallestDisplacement(smallestDisplacement.get());
         }
+        if (maxWaitTime.isPresent()) {
+            request.setMaxWaitTime(maxWaitTime.get());
+        }
         request.setPriority(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY);
-        LocationServices.FusedLocationApi.requestLocationUpdates(googleApiClient, request, this);
+
+        if (adaptivePolicy.isPresent()) {
+            adaptivePolicy.get().getCurrentTier().applyTo(request);
+        }
+
+        locationHub.requestUpdates(this, request);
     }
 
     protected void stopLocationUpdates() {
-        LocationServices.FusedLocationApi.removeLocationUpdates(googleApiClient, this);
+        locationHub.removeUpdates(this);
+        if (batcher != null) {
+            batcher.flush();
+        }
+        locationPublisher.publishUnavailable();
+        batchPublisher.publishUnavailable();
         resourceAvailabilityListener.onResourceUnavailable();
     }
 
@@ -259,9 +388,32 @@ public final class UpdateLocationACG extends PermanentAccessACG<Location> implem
         return location;
     }
 
+    @Override
+    public @NonNull Optional<Location> tryGetResource() {
+        // Read the location once, since updates arrive on another thread
+        Location currentLocation = location;
+        if (!resourceIsAvailable() || currentLocation == null) {
+            return Optional.absent();
+        }
+
+        return Optional.of(currentLocation);
+    }
+
     @Override
     public void onLocationChanged(android.location.Location location) {
         this.location = new Location(location);
-        resourceAvailabilityListener.onResourceReady();
+        if (locationHistory.isPresent()) {
+            locationHistory.get().append(location);
+        }
+        if (adaptivePolicy.isPresent() && adaptivePolicy.get().onLocation(location) && locationHub.isConnected()) {
+            requestLocationUpdates();
+        }
+        locationPublisher.publish(this.location);
+
+        if (batcher != null) {
+            batcher.add(this.location);
+        } else {
+            resourceAvailabilityListener.onResourceReady();
+        }
     }
 }
@@ -0,0 +1,188 @@
+package com.acg.lib.location;
+
+import android.support.annotation.NonNull;
+import com.google.android.gms.location.LocationRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Picks how often to request locations from how fast the device has recently been moving
+ *
+ * Each tier applies from some speed up, with its own interval and priority. The policy watches fixes, smoothing the
+ * observed speed, and treats fixes that stay within the displacement threshold of where the device settled as
+ * stationary. To avoid re-requesting on every wobble, it moves to a faster tier right away, but only moves to a slower
+ * tier after several fixes agree.
+ */
+public final class AdaptiveLocationPolicy {
+
+    public static final Tier STATIONARY = new Tier(0, 60000, 30000, LocationRequest.PRIORITY_LOW_POWER);
+    public static final Tier WALKING = new Tier(0.5f, 10000, 5000, LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY);
+    public static final Tier MOVING = new Tier(3, 2000, 1000, LocationRequest.PRIORITY_HIGH_ACCURACY);
+
+    public static final float DEFAULT_STATIONARY_DISPLACEMENT = 20;
+    public static final int DEFAULT_SLOWDOWN_FIXES = 3;
+
+    private static final float SPEED_SMOOTHING = 0.5f;
+
+    private final @NonNull List<Tier> tiers;
+    private final float stationaryDisplacement;
+    private final int slowdownFixes;
+
+    private Tier currentTier;
+    private Tier slowerCandidateTier;
+    private int slowerCandidateFixes = 0;
+    private float smoothedSpeed = 0;
+    private android.location.Location lastLocation;
+    private android.location.Location stationaryAnchor;
+
+    public AdaptiveLocationPolicy() {
+        this(Arrays.asList(STATIONARY, WALKING, MOVING), DEFAULT_STATIONARY_DISPLACEMENT, DEFAULT_SLOWDOWN_FIXES);
+    }
+
+    /**
+     * @param stationaryDisplacement how far in m the device can drift from where it settled and still be stationary
+     * @param slowdownFixes how many fixes in a row must call for a slower tier before moving to it
+     */
+    public AdaptiveLocationPolicy(@NonNull List<Tier> tiers, float stationaryDisplacement, int slowdownFixes) {
+        if (tiers.isEmpty()) {
+            throw new IllegalArgumentException("Policy needs at least one tier");
+        }
+
+        List<Tier> sortedTiers = new ArrayList<>(tiers);
+        Collections.sort(sortedTiers, new Comparator<Tier>() {
+            @Override
+            public int compare(Tier first, Tier second) {
+                return Float.compare(first.minimumSpeed, second.minimumSpeed);
+            }
+        });
+
+        this.tiers = sortedTiers;
+        this.stationaryDisplacement = stationaryDisplacement;
+        this.slowdownFixes = slowdownFixes;
+        this.currentTier = sortedTiers.get(sortedTiers.size() / 2);
+    }
+
+    public @NonNull Tier getCurrentTier() {
+        return currentTier;
+    }
+
+    /**
+     * Observe a fix, and return whether the tier changed, meaning the location request should be issued again
+     */
+    public boolean onLocation(@NonNull android.location.Location location) {
+        smoothedSpeed = SPEED_SMOOTHING * observedSpeed(location) + (1 - SPEED_SMOOTHING) * smoothedSpeed;
+        lastLocation = location;
+
+        Tier observedTier = tierFor(smoothedSpeed);
+        if (observedTier == currentTier) {
+            slowerCandidateTier = null;
+            slowerCandidateFixes = 0;
+            return false;
+        }
+
+        // Speed up right away
+        if (observedTier.minimumSpeed > currentTier.minimumSpeed) {
+            return changeTier(observedTier);
+        }
+
+        // Slow down only once enough fixes in a row agree
+        if (observedTier != slowerCandidateTier) {
+            slowerCandidateTier = observedTier;
+            slowerCandidateFixes = 0;
+        }
+
+        return ++slowerCandidateFixes >= slowdownFixes && changeTier(observedTier);
+    }
+
+    private boolean changeTier(@NonNull Tier tier) {
+        currentTier = tier;
+        slowerCandidateTier = null;
+        slowerCandidateFixes = 0;
+        return true;
+    }
+
+    /**
+     * The speed of the fix, as reported if it has one, otherwise estimated, which is 0 while the device stays near
+     * where it settled
+     * Only the displacement threshold decides whether the device stayed, not the accuracy of the fix, since the
+     * coarse fixes of the stationary tier would otherwise hide any movement.
+     */
+    private float observedSpeed(@NonNull android.location.Location location) {
+        boolean stayed = stationaryAnchor != null && stationaryAnchor.distanceTo(location) <= stationaryDisplacement;
+        if (!stayed) {
+            stationaryAnchor = location;
+        }
+
+        if (location.hasSpeed()) {
+            return location.getSpeed();
+        }
+
+        if (stayed) {
+            return 0;
+        }
+
+        // Without a reported speed, estimate it from the previous fix
+        if (lastLocation != null && location.getTime() > lastLocation.getTime()) {
+            return lastLocation.distanceTo(location) * 1000f / (location.getTime() - lastLocation.getTime());
+        }
+
+        return smoothedSpeed;
+    }
+
+    private @NonNull Tier tierFor(float speed) {
+        Tier tier = tiers.get(0);
+        for (Tier candidateTier : tiers) {
+            if (speed >= candidateTier.minimumSpeed) {
+                tier = candidateTier;
+            }
+        }
+        return tier;
+    }
+
+    /**
+     * How to request locations from some speed (in m/s) up
+     */
+    public static final class Tier {
+
+        private final float minimumSpeed;
+        private final long interval;
+        private final long fastestInterval;
+        private final int priority;
+
+        public Tier(float minimumSpeed, long interval, long fastestInterval, int priority) {
+            this.minimumSpeed = minimumSpeed;
+            this.interval = interval;
+            this.fastestInterval = fastestInterval;
+            this.priority = priority;
+        }
+
+        public float getMinimumSpeed() {
+            return minimumSpeed;
+        }
+
+        public long getInterval() {
+            return interval;
+        }
+
+        public long getFastestInterval() {
+            return fastestInterval;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * Apply the tier to a request
+         */
+        public void applyTo(@NonNull LocationRequest request) {
+            request.setInterval(interval);
+            request.setFastestInterval(fastestInterval);
+            request.setPriority(priority);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.acg.lib.location;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.LocationListener;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationServices;
+
+/**
+ * Provides locations from the fused location provider of Play Services
+ */
+public final class FusedLocationProvider implements LocationProvider, GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+
+    private final @NonNull GoogleApiClient googleApiClient;
+    private ConnectionCallbacks connectionCallbacks;
+
+    public FusedLocationProvider(@NonNull Context context) {
+        googleApiClient = new GoogleApiClient.Builder(context.getApplicationContext())
+                .addApi(LocationServices.API)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .build();
+    }
+
+    @Override
+    public void connect(@NonNull ConnectionCallbacks connectionCallbacks) {
+        this.connectionCallbacks = connectionCallbacks;
+        googleApiClient.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        googleApiClient.disconnect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return googleApiClient.isConnected();
+    }
+
+    @Override
+    public boolean isConnecting() {
+        return googleApiClient.isConnecting();
+    }
+
+    @Override
+    public android.location.Location getLastLocation() {
+        if (!googleApiClient.isConnected()) {
+            return null;
+        }
+        return LocationServices.FusedLocationApi.getLastLocation(googleApiClient);
+    }
+
+    @Override
+    public void requestUpdates(@NonNull LocationRequest request, @NonNull LocationListener listener) {
+        LocationServices.FusedLocationApi.requestLocationUpdates(googleApiClient, request, listener);
+    }
+
+    @Override
+    public void removeUpdates(@NonNull LocationListener listener) {
+        LocationServices.FusedLocationApi.removeLocationUpdates(googleApiClient, listener);
+    }
+
+    @Override
+    public void onConnected(Bundle bundle) {
+        connectionCallbacks.onProviderConnected();
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+        connectionCallbacks.onProviderSuspended();
+    }
+
+    @Override
+    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
+        throw new RuntimeException("Connection failed");
+    }
+}
@@ -0,0 +1,277 @@
+package com.acg.lib.location;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import com.google.android.gms.location.LocationListener;
+import com.google.android.gms.location.LocationRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide access to locations, shared by every location ACG
+ *
+ * The hub owns the one connection to the location provider, which is the fused location provider unless another is
+ * set before the hub is first used. It connects when the first client acquires it, and
+ * disconnects when the last one releases it. The requests of all listeners are merged into one request for the
+ * most demanding of them, and every update is fanned out to the listeners, skipping listeners that asked for
+ * updates less often than they arrive.
+ *
+ * The hub must be used from the main thread, which is also where its callbacks arrive, except for isConnected,
+ * getLastLocation and getFixCount, which can be called from any thread.
+ */
+public final class LocationHub implements LocationProvider.ConnectionCallbacks, LocationListener {
+
+    private static LocationHub instance;
+    private static LocationProvider providerOverride;
+
+    /**
+     * Told when the connection to the location service comes and goes
+     */
+    public interface ConnectionListener {
+
+        void onLocationConnected();
+
+        void onLocationSuspended();
+    }
+
+    // Only replaced while the hub isn't in use, and read from any thread by isConnected and getLastLocation
+    private volatile @NonNull LocationProvider locationProvider;
+    private final Set<ConnectionListener> clients = new LinkedHashSet<>();
+    private final Map<LocationListener, ListenerRequest> requestsForListeners = new LinkedHashMap<>();
+    private LocationRequest mergedRequest;
+
+    // The number of fixes that arrived, so that readers can tell whether their copy of the last location is current
+    private volatile long fixCount = 0;
+
+    private LocationHub(@NonNull LocationProvider locationProvider) {
+        this.locationProvider = locationProvider;
+    }
+
+    public static synchronized @NonNull LocationHub getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new LocationHub(providerOverride != null ? providerOverride : new FusedLocationProvider(context));
+        }
+        return instance;
+    }
+
+    /**
+     * Provide locations from somewhere else, such as a replayed trace
+     * This can only happen while no ACG is using the hub, and applies from the next time the hub is used. The provider
+     * is swapped inside the one hub, so that ACGs that already hold the hub use it too.
+     */
+    public static synchronized void setLocationProvider(@NonNull LocationProvider locationProvider) {
+        if (instance != null) {
+            if (!instance.clients.isEmpty()) {
+                throw new IllegalStateException("Location provider can't change while the hub is in use");
+            }
+            instance.locationProvider.disconnect();
+            instance.locationProvider = locationProvider;
+        }
+        providerOverride = locationProvider;
+    }
+
+    /**
+     * Start using the hub, connecting if this is the first client
+     * A client that acquires an already connected hub is told right away
+     */
+    public void acquire(@NonNull ConnectionListener client) {
+        if (!clients.add(client)) {
+            return;
+        }
+
+        if (locationProvider.isConnected()) {
+            client.onLocationConnected();
+        } else if (!locationProvider.isConnecting()) {
+            locationProvider.connect(this);
+        }
+    }
+
+    /**
+     * Stop using the hub, disconnecting if this was the last client
+     */
+    public void release(@NonNull ConnectionListener client) {
+        if (!clients.remove(client) || !clients.isEmpty()) {
+            return;
+        }
+
+        if (locationProvider.isConnected() && mergedRequest != null) {
+            locationProvider.removeUpdates(this);
+        }
+        requestsForListeners.clear();
+        mergedRequest = null;
+        locationProvider.disconnect();
+    }
+
+    public boolean isConnected() {
+        return locationProvider.isConnected();
+    }
+
+    /**
+     * The last known location, or null if there is none or the hub isn't connected
+     */
+    public android.location.Location getLastLocation() {
+        if (!locationProvider.isConnected()) {
+            return null;
+        }
+        return locationProvider.getLastLocation();
+    }
+
+    /**
+     * The number of fixes that arrived so far, which changes whenever a new fix arrives
+     * This can be called from any thread.
+     */
+    public long getFixCount() {
+        return fixCount;
+    }
+
+    /**
+     * Deliver updates to the listener as the request asks, replacing any earlier request of the listener
+     * Requests are merged into the most demanding one, and that includes the max wait time: the location service only
+     * batches fixes while every active request allows it, since a listener without a max wait time needs each fix as
+     * it comes.
+     */
+    public void requestUpdates(@NonNull LocationListener listener, @NonNull LocationRequest request) {
+        ListenerRequest previousRequest = requestsForListeners.get(listener);
+        requestsForListeners.put(listener, new ListenerRequest(request, previousRequest == null ? 0 : previousRequest.lastDeliveredTime));
+        updateMergedRequest();
+    }
+
+    public void removeUpdates(@NonNull LocationListener listener) {
+        if (requestsForListeners.remove(listener) != null) {
+            updateMergedRequest();
+        }
+    }
+
+    /**
+     * Issue a request for the most demanding of the listeners, but only if that changed
+     */
+    private void updateMergedRequest() {
+        LocationRequest request = mergeRequests();
+        if (sameRequest(request, mergedRequest)) {
+            return;
+        }
+
+        mergedRequest = request;
+        if (locationProvider.isConnected()) {
+            issueMergedRequest();
+        }
+    }
+
+    private void issueMergedRequest() {
+        if (mergedRequest == null) {
+            locationProvider.removeUpdates(this);
+        } else {
+            // Requesting with the same listener replaces the previous request
+            locationProvider.requestUpdates(mergedRequest, this);
+        }
+    }
+
+    private LocationRequest mergeRequests() {
+        if (requestsForListeners.isEmpty()) {
+            return null;
+        }
+
+        // Passive requests only get fixes others ask for, so they don't tighten the requests of others
+        boolean hasActiveRequest = false;
+        for (ListenerRequest listenerRequest : requestsForListeners.values()) {
+            hasActiveRequest |= listenerRequest.request.getPriority() != LocationRequest.PRIORITY_NO_POWER;
+        }
+
+        LocationRequest merged = null;
+        for (ListenerRequest listenerRequest : requestsForListeners.values()) {
+            LocationRequest request = listenerRequest.request;
+            if (hasActiveRequest && request.getPriority() == LocationRequest.PRIORITY_NO_POWER) {
+                continue;
+            }
+
+            if (merged == null) {
+                merged = new LocationRequest()
+                        .setInterval(request.getInterval())
+                        .setFastestInterval(request.getFastestInterval())
+                        .setSmallestDisplacement(request.getSmallestDisplacement())
+                        .setMaxWaitTime(request.getMaxWaitTime())
+                        .setPriority(request.getPriority());
+            } else {
+                // Smaller priority values are more accurate
+                merged.setInterval(Math.min(merged.getInterval(), request.getInterval()))
+                        .setFastestInterval(Math.min(merged.getFastestInterval(), request.getFastestInterval()))
+                        .setSmallestDisplacement(Math.min(merged.getSmallestDisplacement(), request.getSmallestDisplacement()))
+                        // A listener that doesn't batch turns batching off for everyone
+                        .setMaxWaitTime(Math.min(merged.getMaxWaitTime(), request.getMaxWaitTime()))
+                        .setPriority(Math.min(merged.getPriority(), request.getPriority()));
+            }
+        }
+
+        return merged;
+    }
+
+    private static boolean sameRequest(LocationRequest first, LocationRequest second) {
+        if (first == null || second == null) {
+            return first == second;
+        }
+
+        return first.getInterval() == second.getInterval() && first.getFastestInterval() == second.getFastestInterval() &&
+                first.getSmallestDisplacement() == second.getSmallestDisplacement() &&
+                first.getMaxWaitTime() == second.getMaxWaitTime() && first.getPriority() == second.getPriority();
+    }
+
+    @Override
+    public void onProviderConnected() {
+        if (mergedRequest != null) {
+            issueMergedRequest();
+        }
+
+        // Copy, since clients may release from their callback
+        for (ConnectionListener client : new ArrayList<>(clients)) {
+            client.onLocationConnected();
+        }
+    }
+
+    @Override
+    public void onProviderSuspended() {
+        for (ConnectionListener client : new ArrayList<>(clients)) {
+            client.onLocationSuspended();
+        }
+    }
+
+    /**
+     * Fan the update out, skipping listeners whose fastest interval hasn't passed since their last update
+     * A fix from before the last update means the clock or the provider started over, so it is not skipped
+     */
+    @Override
+    public void onLocationChanged(android.location.Location location) {
+        fixCount++;
+
+        List<Map.Entry<LocationListener, ListenerRequest>> entries = new ArrayList<>(requestsForListeners.entrySet());
+        for (Map.Entry<LocationListener, ListenerRequest> entry : entries) {
+            ListenerRequest listenerRequest = entry.getValue();
+
+            // Listeners may be removed by earlier listeners
+            if (requestsForListeners.get(entry.getKey()) != listenerRequest) {
+                continue;
+            }
+            long sinceLastDelivered = location.getTime() - listenerRequest.lastDeliveredTime;
+            if (sinceLastDelivered >= 0 && sinceLastDelivered < listenerRequest.request.getFastestInterval()) {
+                continue;
+            }
+
+            listenerRequest.lastDeliveredTime = location.getTime();
+            entry.getKey().onLocationChanged(location);
+        }
+    }
+
+    private static final class ListenerRequest {
+        private final @NonNull LocationRequest request;
+        private long lastDeliveredTime;
+
+        private ListenerRequest(@NonNull LocationRequest request, long lastDeliveredTime) {
+            this.request = request;
+            this.lastDeliveredTime = lastDeliveredTime;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.acg.lib.location;
+
+import android.support.annotation.NonNull;
+import com.google.android.gms.location.LocationListener;
+import com.google.android.gms.location.LocationRequest;
+
+/**
+ * A source of locations behind the LocationHub
+ * Implementations call back on the main thread, like the location service does.
+ */
+public interface LocationProvider {
+
+    /**
+     * Told when the provider connects and when its connection is suspended
+     */
+    interface ConnectionCallbacks {
+
+        void onProviderConnected();
+
+        void onProviderSuspended();
+    }
+
+    void connect(@NonNull ConnectionCallbacks connectionCallbacks);
+
+    void disconnect();
+
+    boolean isConnected();
+
+    boolean isConnecting();
+
+    /**
+     * The last known location, or null if there is none
+     * This can be called from any thread.
+     */
+    android.location.Location getLastLocation();
+
+    /**
+     * Deliver updates to the listener as the request asks, replacing any earlier request for the listener
+     */
+    void requestUpdates(@NonNull LocationRequest request, @NonNull LocationListener listener);
+
+    void removeUpdates(@NonNull LocationListener listener);
+}
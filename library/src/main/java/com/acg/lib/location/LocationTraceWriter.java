@@ -0,0 +1,65 @@
+package com.acg.lib.location;
+
+import android.support.annotation.NonNull;
+import com.acg.lib.model.LocationSnapshot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records locations to a trace file that a TraceLocationProvider can replay
+ *
+ * A trace is a header (magic number and version) followed by fixed-width LocationSnapshots in the order they were
+ * recorded, so a fix takes LocationSnapshot.BYTES bytes.
+ */
+public final class LocationTraceWriter implements Closeable {
+
+    public static final int MAGIC = 0x41434754;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+
+    private static final int BUFFERED_SNAPSHOTS = 256;
+
+    private final FileOutputStream outputStream;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERED_SNAPSHOTS * LocationSnapshot.BYTES);
+
+    public LocationTraceWriter(@NonNull File traceFile) throws IOException {
+        outputStream = new FileOutputStream(traceFile);
+        channel = outputStream.getChannel();
+
+        buffer.putInt(MAGIC).putInt(VERSION);
+    }
+
+    public void append(@NonNull LocationSnapshot snapshot) throws IOException {
+        if (buffer.remaining() < LocationSnapshot.BYTES) {
+            flush();
+        }
+        snapshot.writeTo(buffer);
+    }
+
+    public void append(@NonNull android.location.Location location) throws IOException {
+        append(LocationSnapshot.of(location));
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.acg.lib.location;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import com.acg.lib.model.LocationSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps the most recent fix in a small memory-mapped file, so that it can be served as soon as the process starts,
+ * before the connection to the location service comes up
+ *
+ * Writing goes straight to the mapping and is persisted by the system, even if the process dies right after. The fix
+ * is framed by a sequence number on both sides, so a write that was cut short is never read back.
+ */
+public final class PersistedFixStore {
+
+    private static final String FILE_NAME = "acg_last_fix";
+    private static final int MAGIC = 0x41434746;
+    private static final int VERSION = 1;
+
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int SNAPSHOT_OFFSET = SEQUENCE_OFFSET + 8;
+    private static final int TRAILING_SEQUENCE_OFFSET = SNAPSHOT_OFFSET + LocationSnapshot.BYTES;
+    private static final int FILE_BYTES = TRAILING_SEQUENCE_OFFSET + 8;
+
+    private static PersistedFixStore instance;
+
+    private final @NonNull MappedByteBuffer mapping;
+    private LocationSnapshot lastWritten;
+
+    private PersistedFixStore(@NonNull File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // The mapping stays valid after the file is closed
+            mapping = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        if (mapping.getInt(0) != MAGIC || mapping.getInt(4) != VERSION) {
+            mapping.putInt(0, MAGIC).putInt(4, VERSION);
+            mapping.putLong(SEQUENCE_OFFSET, 0).putLong(TRAILING_SEQUENCE_OFFSET, -1);
+        }
+
+        lastWritten = readFromMapping();
+    }
+
+    /**
+     * Get the store for the process, or null if its file can't be mapped
+     */
+    public static synchronized PersistedFixStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            try {
+                instance = new PersistedFixStore(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Persist a fix, unless it is the fix that was persisted last
+     */
+    public synchronized void write(@NonNull android.location.Location location) {
+        LocationSnapshot snapshot = LocationSnapshot.of(location);
+        if (snapshot.equals(lastWritten)) {
+            return;
+        }
+
+        // Bump the leading sequence first, so the fix reads as torn until the trailing sequence matches again
+        long sequence = mapping.getLong(SEQUENCE_OFFSET) + 1;
+        mapping.putLong(SEQUENCE_OFFSET, sequence);
+        mapping.position(SNAPSHOT_OFFSET);
+        snapshot.writeTo(mapping);
+        mapping.putLong(TRAILING_SEQUENCE_OFFSET, sequence);
+
+        lastWritten = snapshot;
+    }
+
+    /**
+     * The most recently persisted fix, or null if there is none
+     */
+    public synchronized LocationSnapshot read() {
+        return lastWritten;
+    }
+
+    private LocationSnapshot readFromMapping() {
+        long sequence = mapping.getLong(SEQUENCE_OFFSET);
+        if (sequence == 0 || sequence != mapping.getLong(TRAILING_SEQUENCE_OFFSET)) {
+            return null;
+        }
+
+        mapping.position(SNAPSHOT_OFFSET);
+        return LocationSnapshot.readFrom(mapping);
+    }
+}
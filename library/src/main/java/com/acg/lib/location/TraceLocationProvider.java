@@ -0,0 +1,219 @@
+package com.acg.lib.location;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import com.acg.lib.model.LocationSnapshot;
+import com.google.android.gms.location.LocationListener;
+import com.google.android.gms.location.LocationRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Provides locations by replaying a trace recorded by a LocationTraceWriter, for testing and benchmarking without
+ * Play Services
+ *
+ * Fixes are replayed with the spacing they were recorded with, divided by the speed factor; an infinite speed factor
+ * replays them as fast as they can be delivered. Replayed fixes keep their recorded time, but their elapsed realtime
+ * is stamped when they are dispatched, so the latency from dispatch to delivery can be measured against
+ * SystemClock.elapsedRealtimeNanos. Requests don't change the pace of the replay.
+ */
+public final class TraceLocationProvider implements LocationProvider {
+
+    public static final float REAL_TIME = 1;
+    public static final float AS_FAST_AS_POSSIBLE = Float.POSITIVE_INFINITY;
+
+    private static final String PROVIDER = "trace";
+
+    // Yield the looper after this many fixes, so that fast replays don't starve it
+    private static final int MAX_FIXES_PER_DISPATCH = 64;
+
+    // Gap between the end of a looped trace and its start again
+    private static final long LOOP_GAP_MILLIS = 1000;
+
+    private final @NonNull ByteBuffer trace;
+    private final float speedFactor;
+    private final boolean loops;
+    private final @NonNull Handler handler;
+
+    private final Set<LocationListener> listeners = new LinkedHashSet<>();
+    private ConnectionCallbacks connectionCallbacks;
+    private volatile boolean connected = false;
+    private volatile android.location.Location lastLocation;
+
+    // Replay position, in uptime and in recorded time
+    private long replayStartUptime;
+    private long traceStartTime;
+    private long lastRecordedTime;
+
+    // Added to recorded times, so that times keep increasing when the trace loops
+    private long loopTimeOffset = 0;
+
+    private final Runnable replayNext = new Runnable() {
+        @Override
+        public void run() {
+            replayDueFixes();
+        }
+    };
+
+    /**
+     * The trace is memory mapped, so it is read without copying it into the heap
+     */
+    public TraceLocationProvider(@NonNull File traceFile, float speedFactor, boolean loops) throws IOException {
+        this(mapTrace(traceFile), speedFactor, loops, Looper.getMainLooper());
+    }
+
+    public TraceLocationProvider(@NonNull ByteBuffer trace, float speedFactor, boolean loops, @NonNull Looper looper) {
+        if (!(speedFactor > 0)) {
+            throw new IllegalArgumentException("Speed factor must be positive");
+        }
+        if (trace.remaining() < LocationTraceWriter.HEADER_BYTES || trace.getInt(trace.position()) != LocationTraceWriter.MAGIC) {
+            throw new IllegalArgumentException("Not a location trace");
+        }
+        if (trace.getInt(trace.position() + 4) != LocationTraceWriter.VERSION) {
+            throw new IllegalArgumentException("Unsupported location trace version");
+        }
+
+        this.trace = trace.slice();
+        this.speedFactor = speedFactor;
+        this.loops = loops;
+        this.handler = new Handler(looper);
+    }
+
+    private static ByteBuffer mapTrace(@NonNull File traceFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(traceFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // The mapping stays valid after the file is closed
+            file.close();
+        }
+    }
+
+    /**
+     * The number of fixes in the trace
+     */
+    public int getFixCount() {
+        return (trace.limit() - LocationTraceWriter.HEADER_BYTES) / LocationSnapshot.BYTES;
+    }
+
+    @Override
+    public void connect(@NonNull final ConnectionCallbacks connectionCallbacks) {
+        this.connectionCallbacks = connectionCallbacks;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (TraceLocationProvider.this.connectionCallbacks == connectionCallbacks && !connected) {
+                    connected = true;
+                    connectionCallbacks.onProviderConnected();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void disconnect() {
+        connected = false;
+        connectionCallbacks = null;
+        listeners.clear();
+        handler.removeCallbacks(replayNext);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public boolean isConnecting() {
+        return connectionCallbacks != null && !connected;
+    }
+
+    @Override
+    public android.location.Location getLastLocation() {
+        return lastLocation;
+    }
+
+    @Override
+    public void requestUpdates(@NonNull LocationRequest request, @NonNull LocationListener listener) {
+        boolean firstListener = listeners.isEmpty();
+        listeners.add(listener);
+
+        if (firstListener && connected) {
+            rewind();
+            loopTimeOffset = 0;
+            handler.post(replayNext);
+        }
+    }
+
+    @Override
+    public void removeUpdates(@NonNull LocationListener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty()) {
+            handler.removeCallbacks(replayNext);
+        }
+    }
+
+    private void rewind() {
+        trace.position(LocationTraceWriter.HEADER_BYTES);
+        replayStartUptime = SystemClock.uptimeMillis();
+        traceStartTime = trace.remaining() >= LocationSnapshot.BYTES ? LocationSnapshot.readTimeAt(trace, trace.position()) : 0;
+        lastRecordedTime = traceStartTime;
+    }
+
+    /**
+     * Deliver the fixes that are due, then schedule the next one
+     */
+    private void replayDueFixes() {
+        for (int dispatched = 0; connected && !listeners.isEmpty(); dispatched++) {
+            if (trace.remaining() < LocationSnapshot.BYTES) {
+                if (!loops) {
+                    return;
+                }
+
+                long loopedTime = lastRecordedTime - traceStartTime + LOOP_GAP_MILLIS;
+                rewind();
+                loopTimeOffset += loopedTime;
+                if (trace.remaining() < LocationSnapshot.BYTES) {
+                    return;
+                }
+            }
+
+            if (dispatched == MAX_FIXES_PER_DISPATCH) {
+                handler.post(replayNext);
+                return;
+            }
+
+            long recordedTime = LocationSnapshot.readTimeAt(trace, trace.position());
+            long dueUptime = replayStartUptime + (long) ((recordedTime - traceStartTime) / speedFactor);
+            if (dueUptime > SystemClock.uptimeMillis()) {
+                handler.postAtTime(replayNext, dueUptime);
+                return;
+            }
+
+            lastRecordedTime = recordedTime;
+            dispatch(LocationSnapshot.readFrom(trace));
+        }
+    }
+
+    private void dispatch(@NonNull LocationSnapshot snapshot) {
+        android.location.Location location = snapshot.toLocation(PROVIDER);
+        location.setTime(snapshot.getTime() + loopTimeOffset);
+        location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+        lastLocation = location;
+
+        // Copy, since listeners may remove themselves
+        for (LocationListener listener : new ArrayList<>(listeners)) {
+            listener.onLocationChanged(location);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.acg.lib.memory;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Process-wide memory management for ACG state, such as validation references and scratch buffers
+ *
+ * Registers with the application for trim callbacks and forwards them to every live Trimmable. It also enforces an
+ * optional cap on the total bytes held, releasing the least recently used state first when the cap is exceeded.
+ */
+public final class ACGMemory implements ComponentCallbacks2 {
+
+    public static final long NO_MEMORY_CAP = Long.MAX_VALUE;
+
+    private static final ACGMemory INSTANCE = new ACGMemory();
+
+    // Configuration changes that change how views render
+    private static final int RENDERING_CONFIG_CHANGES = ActivityInfo.CONFIG_DENSITY | ActivityInfo.CONFIG_FONT_SCALE | ActivityInfo.CONFIG_LOCALE;
+
+    private boolean registered = false;
+    private Configuration configuration;
+    private long memoryCap = NO_MEMORY_CAP;
+
+    // Weak keys, so that state for ACGs that are gone does not stay registered
+    private final Map<Trimmable, Long> lastUseForTrimmables = new WeakHashMap<>();
+
+    private ACGMemory() {
+    }
+
+    /**
+     * Register for trim callbacks with the application, if that hasn't happened yet
+     */
+    public static void register(@NonNull Context context) {
+        synchronized (INSTANCE) {
+            if (!INSTANCE.registered) {
+                context.getApplicationContext().registerComponentCallbacks(INSTANCE);
+                INSTANCE.configuration = new Configuration(context.getApplicationContext().getResources().getConfiguration());
+                INSTANCE.registered = true;
+            }
+        }
+    }
+
+    public static void addTrimmable(@NonNull Trimmable trimmable) {
+        synchronized (INSTANCE) {
+            INSTANCE.lastUseForTrimmables.put(trimmable, System.nanoTime());
+        }
+    }
+
+    public static void removeTrimmable(@NonNull Trimmable trimmable) {
+        synchronized (INSTANCE) {
+            INSTANCE.lastUseForTrimmables.remove(trimmable);
+        }
+    }
+
+    /**
+     * Mark state as in use, then release other state if the total is now over the cap
+     */
+    public static void retain(@NonNull Trimmable trimmable) {
+        synchronized (INSTANCE) {
+            INSTANCE.lastUseForTrimmables.put(trimmable, System.nanoTime());
+            INSTANCE.enforceMemoryCap(trimmable);
+        }
+    }
+
+    /**
+     * Set the maximum number of bytes that ACG state may hold across the process
+     */
+    public static void setMemoryCap(long memoryCapInBytes) {
+        synchronized (INSTANCE) {
+            INSTANCE.memoryCap = memoryCapInBytes;
+            INSTANCE.enforceMemoryCap(null);
+        }
+    }
+
+    public static long getMemoryCap() {
+        synchronized (INSTANCE) {
+            return INSTANCE.memoryCap;
+        }
+    }
+
+    /**
+     * The number of bytes currently held across all registered state
+     */
+    public static long getRetainedByteCount() {
+        synchronized (INSTANCE) {
+            return INSTANCE.totalRetainedByteCount();
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        List<Trimmable> trimmables;
+        synchronized (this) {
+            trimmables = new ArrayList<>(lastUseForTrimmables.keySet());
+        }
+
+        for (Trimmable trimmable : trimmables) {
+            trimmable.onTrimMemory(level);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        int changes;
+        synchronized (this) {
+            changes = configuration == null ? RENDERING_CONFIG_CHANGES : configuration.diff(newConfig);
+            configuration = new Configuration(newConfig);
+        }
+
+        // State such as references is rendered for a density, font scale, and locale, and is shared across
+        // instances, so release all of it to be rebuilt when one of those changes, but not for other changes
+        if ((changes & RENDERING_CONFIG_CHANGES) != 0) {
+            onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+    }
+
+    private long totalRetainedByteCount() {
+        long total = 0;
+        for (Trimmable trimmable : lastUseForTrimmables.keySet()) {
+            total += trimmable.getRetainedByteCount();
+        }
+        return total;
+    }
+
+    /**
+     * Release state, least recently used first, until the total is under the cap, never releasing the state in use
+     */
+    private void enforceMemoryCap(Trimmable inUse) {
+        long total = totalRetainedByteCount();
+        if (total <= memoryCap) {
+            return;
+        }
+
+        List<Map.Entry<Trimmable, Long>> entries = new ArrayList<>(lastUseForTrimmables.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Trimmable, Long>>() {
+            @Override
+            public int compare(Map.Entry<Trimmable, Long> first, Map.Entry<Trimmable, Long> second) {
+                return first.getValue().compareTo(second.getValue());
+            }
+        });
+
+        for (Map.Entry<Trimmable, Long> entry : entries) {
+            Trimmable trimmable = entry.getKey();
+            if (total <= memoryCap) {
+                return;
+            }
+
+            if (trimmable != null && trimmable != inUse) {
+                long retained = trimmable.getRetainedByteCount();
+                trimmable.onTrimMemory(TRIM_MEMORY_COMPLETE);
+                total -= retained - trimmable.getRetainedByteCount();
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.acg.lib.memory;
+
+/**
+ * State held by the library that can be released under memory pressure and rebuilt lazily when it is next needed
+ */
+public interface Trimmable {
+
+    /**
+     * Release memory according to a trim level from ComponentCallbacks2
+     */
+    void onTrimMemory(int level);
+
+    /**
+     * The number of bytes currently held, which count against the memory cap
+     */
+    long getRetainedByteCount();
+}
@@ -9,17 +9,29 @@ import android.support.annotation.NonNull;
  * Wraps the Android Location
  * Required by SPARTA for the flow to be correct, otherwise, the flow is inferred by the use of the Android Location
  * object, but this is not the correct flow for ACGs.
+ * The same instance may be served to many callers, so it keeps its own copy of the Android Location, and only hands
+ * out copies of it.
  */
 public final class Location implements Parcelable {
 
-    private android.location.Location location;
+    private final android.location.Location location;
+    private final boolean stale;
 
     public Location(@NonNull android.location.Location location) {
-        this.location = location;
+        this(location, false);
+    }
+
+    /**
+     * A stale location is one that was kept from before, and not reported by a live location connection
+     */
+    public Location(@NonNull android.location.Location location, boolean stale) {
+        this.location = new android.location.Location(location);
+        this.stale = stale;
     }
 
     protected Location(Parcel in) {
         location = in.readParcelable(android.location.Location.class.getClassLoader());
+        stale = in.readByte() != 0;
     }
 
     public static final Creator<Location> CREATOR = new Creator<Location>() {
@@ -34,8 +46,11 @@ public final class Location implements Parcelable {
         }
     };
 
+    /**
+     * A copy of the Android Location, which callers may change without affecting anyone else
+     */
     public android.location.Location getLocation() {
-        return location;
+        return new android.location.Location(location);
     }
 
     public double getLatitude() {
@@ -54,8 +69,26 @@ public final class Location implements Parcelable {
         return location.getTime();
     }
 
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * How long ago the location was fixed, in ms
+     */
+    public long getAgeMillis() {
+        return System.currentTimeMillis() - location.getTime();
+    }
+
+    /**
+     * A compact copy of this location, for passing between components or persisting
+     */
+    public @NonNull LocationSnapshot toSnapshot() {
+        return LocationSnapshot.of(location);
+    }
+
     public float distanceTo(Location location) {
-        return this.location.distanceTo(location.getLocation());
+        return this.location.distanceTo(location.location);
     }
 
     @Override
@@ -66,5 +99,6 @@ public final class Location implements Parcelable {
     @Override
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeParcelable(location, flags);
+        dest.writeByte((byte) (stale ? 1 : 0));
     }
 }
@@ -0,0 +1,205 @@
+package com.acg.lib.model;
+
+import android.support.annotation.NonNull;
+
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-capacity history of locations, kept in parallel primitive arrays as a ring buffer
+ *
+ * Appending doesn't allocate, and the history never holds more than its capacity, so long sessions have a
+ * predictable footprint. There is one writer, the thread location updates arrive on; any thread can read through
+ * snapshots, which view the arrays without copying them. Once the writer wraps around onto an entry of a snapshot,
+ * reading that entry throws ConcurrentModificationException.
+ *
+ * This works like a seqlock: a reader reads an entry, then checks that the write count hasn't reached it. Entries are
+ * read and written with volatile semantics, so the check can't be reordered before the read, and a value from a newer
+ * write is always caught by it. Doubles and floats are kept as their raw bits for that.
+ *
+ * Time-range queries assume that locations are appended in time order.
+ */
+public final class LocationHistory {
+
+    private final int capacity;
+
+    // One slot more than the capacity, so that the write in progress never touches a location in the history
+    private final int slots;
+    private final AtomicLongArray latitudes;
+    private final AtomicLongArray longitudes;
+    private final AtomicLongArray times;
+    private final AtomicIntegerArray accuracies;
+    private final AtomicIntegerArray speeds;
+
+    // The number of locations ever appended, which is also the index of the next one
+    private volatile long writeCount = 0;
+
+    public LocationHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("History must hold at least one location");
+        }
+
+        this.capacity = capacity;
+        this.slots = capacity + 1;
+        this.latitudes = new AtomicLongArray(slots);
+        this.longitudes = new AtomicLongArray(slots);
+        this.times = new AtomicLongArray(slots);
+        this.accuracies = new AtomicIntegerArray(slots);
+        this.speeds = new AtomicIntegerArray(slots);
+    }
+
+    /**
+     * Append a location, overwriting the oldest one if the history is full
+     * Only call this from one thread
+     */
+    public void append(@NonNull android.location.Location location) {
+        long index = writeCount;
+        int slot = (int) (index % slots);
+
+        latitudes.set(slot, Double.doubleToRawLongBits(location.getLatitude()));
+        longitudes.set(slot, Double.doubleToRawLongBits(location.getLongitude()));
+        times.set(slot, location.getTime());
+        accuracies.set(slot, Float.floatToRawIntBits(location.getAccuracy()));
+        speeds.set(slot, Float.floatToRawIntBits(location.getSpeed()));
+
+        // Publish the entry only after it is written
+        writeCount = index + 1;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The number of locations in the history right now
+     */
+    public int size() {
+        return (int) Math.min(writeCount, capacity);
+    }
+
+    /**
+     * View every location in the history right now, oldest first
+     */
+    public @NonNull Snapshot snapshot() {
+        long end = writeCount;
+        return new Snapshot(oldestIndex(end), end);
+    }
+
+    /**
+     * View the locations with times in [fromTime, toTime], oldest first
+     */
+    public @NonNull Snapshot snapshotBetween(long fromTime, long toTime) {
+        long end = writeCount;
+        long start = oldestIndex(end);
+        return new Snapshot(firstIndexAtOrAfter(fromTime, start, end), firstIndexAtOrAfter(toTime + 1, start, end));
+    }
+
+    private long oldestIndex(long end) {
+        return Math.max(0, end - capacity);
+    }
+
+    /**
+     * Binary search for the first index in [start, end) with a time at or after the given time
+     */
+    private long firstIndexAtOrAfter(long time, long start, long end) {
+        long low = start;
+        long high = end;
+
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (times.get((int) (middle % slots)) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Whether the entry with this index hasn't been, and isn't being, overwritten
+     */
+    private boolean isValid(long index) {
+        return index + slots > writeCount;
+    }
+
+    /**
+     * A zero-copy view of a range of the history
+     */
+    public final class Snapshot {
+
+        private final long start;
+        private final long end;
+
+        private Snapshot(long start, long end) {
+            this.start = start;
+            this.end = Math.max(start, end);
+        }
+
+        public int size() {
+            return (int) (end - start);
+        }
+
+        /**
+         * Whether every location in the snapshot can still be read
+         */
+        public boolean isValid() {
+            return size() == 0 || LocationHistory.this.isValid(start);
+        }
+
+        public double getLatitude(int position) {
+            int slot = slotFor(position);
+            double latitude = Double.longBitsToDouble(latitudes.get(slot));
+            checkStillValid(position);
+            return latitude;
+        }
+
+        public double getLongitude(int position) {
+            int slot = slotFor(position);
+            double longitude = Double.longBitsToDouble(longitudes.get(slot));
+            checkStillValid(position);
+            return longitude;
+        }
+
+        public long getTime(int position) {
+            int slot = slotFor(position);
+            long time = times.get(slot);
+            checkStillValid(position);
+            return time;
+        }
+
+        public float getAccuracy(int position) {
+            int slot = slotFor(position);
+            float accuracy = Float.intBitsToFloat(accuracies.get(slot));
+            checkStillValid(position);
+            return accuracy;
+        }
+
+        public float getSpeed(int position) {
+            int slot = slotFor(position);
+            float speed = Float.intBitsToFloat(speeds.get(slot));
+            checkStillValid(position);
+            return speed;
+        }
+
+        private int slotFor(int position) {
+            if (position < 0 || position >= size()) {
+                throw new IndexOutOfBoundsException("Position " + position + " is outside a snapshot of size " + size());
+            }
+
+            checkStillValid(position);
+            return (int) ((start + position) % slots);
+        }
+
+        /**
+         * Check after reading too, since the writer may have wrapped around while we were reading
+         */
+        private void checkStillValid(int position) {
+            if (!LocationHistory.this.isValid(start + position)) {
+                throw new ConcurrentModificationException("Location was overwritten by newer locations");
+            }
+        }
+    }
+}
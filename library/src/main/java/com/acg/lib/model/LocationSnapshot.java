@@ -0,0 +1,229 @@
+package com.acg.lib.model;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact, immutable model for a location, holding only primitive fields
+ * Unlike Location, this doesn't carry the extras or the provider of the Android Location, so it parcels and
+ * serializes in a few dozen bytes. Binary serialization is fixed width, so snapshots can be stored back to back.
+ */
+public final class LocationSnapshot implements Parcelable {
+
+    /**
+     * The number of bytes a snapshot takes in a ByteBuffer
+     */
+    public static final int BYTES = 4 * 8 + 3 * 4 + 1;
+
+    private static final byte HAS_ALTITUDE = 1;
+    private static final byte HAS_ACCURACY = 1 << 1;
+    private static final byte HAS_SPEED = 1 << 2;
+    private static final byte HAS_BEARING = 1 << 3;
+
+    private final double latitude;
+    private final double longitude;
+    private final long time;
+    private final double altitude;
+    private final float accuracy;
+    private final float speed;
+    private final float bearing;
+    private final byte flags;
+
+    private LocationSnapshot(double latitude, double longitude, long time, double altitude, float accuracy, float speed, float bearing, byte flags) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.time = time;
+        this.altitude = altitude;
+        this.accuracy = accuracy;
+        this.speed = speed;
+        this.bearing = bearing;
+        this.flags = flags;
+    }
+
+    public static @NonNull LocationSnapshot of(@NonNull android.location.Location location) {
+        byte flags = 0;
+        flags |= location.hasAltitude() ? HAS_ALTITUDE : 0;
+        flags |= location.hasAccuracy() ? HAS_ACCURACY : 0;
+        flags |= location.hasSpeed() ? HAS_SPEED : 0;
+        flags |= location.hasBearing() ? HAS_BEARING : 0;
+
+        return new LocationSnapshot(location.getLatitude(), location.getLongitude(), location.getTime(),
+                location.getAltitude(), location.getAccuracy(), location.getSpeed(), location.getBearing(), flags);
+    }
+
+    public static @NonNull LocationSnapshot of(@NonNull Location location) {
+        return location.toSnapshot();
+    }
+
+    /**
+     * Build an Android Location from the snapshot, for APIs that need one
+     */
+    public @NonNull android.location.Location toLocation(@NonNull String provider) {
+        android.location.Location location = new android.location.Location(provider);
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setTime(time);
+
+        if (hasAltitude()) {
+            location.setAltitude(altitude);
+        }
+        if (hasAccuracy()) {
+            location.setAccuracy(accuracy);
+        }
+        if (hasSpeed()) {
+            location.setSpeed(speed);
+        }
+        if (hasBearing()) {
+            location.setBearing(bearing);
+        }
+
+        return location;
+    }
+
+    /**
+     * Write the snapshot at the position of the buffer, advancing it by BYTES
+     */
+    public void writeTo(@NonNull ByteBuffer buffer) {
+        buffer.putDouble(latitude)
+                .putDouble(longitude)
+                .putLong(time)
+                .putDouble(altitude)
+                .putFloat(accuracy)
+                .putFloat(speed)
+                .putFloat(bearing)
+                .put(flags);
+    }
+
+    /**
+     * Read only the time of the snapshot at an absolute position of the buffer, which is after its coordinates
+     */
+    public static long readTimeAt(@NonNull ByteBuffer buffer, int position) {
+        return buffer.getLong(position + 2 * 8);
+    }
+
+    /**
+     * Read a snapshot at the position of the buffer, advancing it by BYTES
+     */
+    public static @NonNull LocationSnapshot readFrom(@NonNull ByteBuffer buffer) {
+        if (buffer.remaining() < BYTES) {
+            throw new BufferUnderflowException();
+        }
+
+        return new LocationSnapshot(buffer.getDouble(), buffer.getDouble(), buffer.getLong(), buffer.getDouble(),
+                buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.get());
+    }
+
+    protected LocationSnapshot(Parcel in) {
+        latitude = in.readDouble();
+        longitude = in.readDouble();
+        time = in.readLong();
+        altitude = in.readDouble();
+        accuracy = in.readFloat();
+        speed = in.readFloat();
+        bearing = in.readFloat();
+        flags = in.readByte();
+    }
+
+    public static final Creator<LocationSnapshot> CREATOR = new Creator<LocationSnapshot>() {
+        @Override
+        public LocationSnapshot createFromParcel(Parcel in) {
+            return new LocationSnapshot(in);
+        }
+
+        @Override
+        public LocationSnapshot[] newArray(int size) {
+            return new LocationSnapshot[size];
+        }
+    };
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public double getAltitude() {
+        return altitude;
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public float getBearing() {
+        return bearing;
+    }
+
+    public boolean hasAltitude() {
+        return (flags & HAS_ALTITUDE) != 0;
+    }
+
+    public boolean hasAccuracy() {
+        return (flags & HAS_ACCURACY) != 0;
+    }
+
+    public boolean hasSpeed() {
+        return (flags & HAS_SPEED) != 0;
+    }
+
+    public boolean hasBearing() {
+        return (flags & HAS_BEARING) != 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LocationSnapshot)) {
+            return false;
+        }
+
+        LocationSnapshot other = (LocationSnapshot) o;
+        return Double.compare(latitude, other.latitude) == 0 && Double.compare(longitude, other.longitude) == 0 &&
+                time == other.time && Double.compare(altitude, other.altitude) == 0 &&
+                Float.compare(accuracy, other.accuracy) == 0 && Float.compare(speed, other.speed) == 0 &&
+                Float.compare(bearing, other.bearing) == 0 && flags == other.flags;
+    }
+
+    @Override
+    public int hashCode() {
+        long latitudeBits = Double.doubleToLongBits(latitude);
+        long longitudeBits = Double.doubleToLongBits(longitude);
+        int result = (int) (latitudeBits ^ (latitudeBits >>> 32));
+        result = 31 * result + (int) (longitudeBits ^ (longitudeBits >>> 32));
+        result = 31 * result + (int) (time ^ (time >>> 32));
+        return result;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeDouble(latitude);
+        dest.writeDouble(longitude);
+        dest.writeLong(time);
+        dest.writeDouble(altitude);
+        dest.writeFloat(accuracy);
+        dest.writeFloat(speed);
+        dest.writeFloat(bearing);
+        dest.writeByte(this.flags);
+    }
+}
@@ -0,0 +1,176 @@
+package com.acg.lib.model;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a trail written by TrailEncoder, one fix at a time, without allocating anything per fix
+ *
+ * The decoder is a cursor: next moves to the next fix, and the getters read the fix the cursor is on. seek uses the
+ * keyframe index to jump close to a time, so only one block is decoded to find it.
+ */
+public final class TrailDecoder {
+
+    private final @NonNull ByteBuffer buffer;
+    private final long[] blockOffsets;
+    private final long[] blockFirstTimes;
+    private final int[] blockFixCounts;
+
+    private int nextBlock = 0;
+    private int remainingInBlock = 0;
+
+    private int latitude;
+    private int longitude;
+    private long time;
+    private boolean onFix = false;
+
+    public TrailDecoder(@NonNull ByteBuffer trail) {
+        this.buffer = trail.slice();
+
+        if (buffer.limit() < TrailEncoder.HEADER_BYTES + TrailEncoder.TRAILER_BYTES ||
+                buffer.getInt(0) != TrailEncoder.MAGIC || buffer.getInt(buffer.limit() - 4) != TrailEncoder.MAGIC) {
+            throw new IllegalArgumentException("Not a complete trail");
+        }
+        if (buffer.getInt(4) != TrailEncoder.VERSION) {
+            throw new IllegalArgumentException("Unsupported trail version");
+        }
+
+        // Read the keyframe index from the footer
+        int trailerOffset = buffer.limit() - TrailEncoder.TRAILER_BYTES;
+        int blockCount = buffer.getInt(trailerOffset);
+        int indexOffset = (int) buffer.getLong(trailerOffset + 4);
+
+        blockOffsets = new long[blockCount];
+        blockFirstTimes = new long[blockCount];
+        blockFixCounts = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            int entryOffset = indexOffset + i * TrailEncoder.INDEX_ENTRY_BYTES;
+            blockOffsets[i] = buffer.getLong(entryOffset);
+            blockFirstTimes[i] = buffer.getLong(entryOffset + 8);
+            blockFixCounts[i] = buffer.getInt(entryOffset + 16);
+        }
+
+        rewind();
+    }
+
+    /**
+     * Map a trail file and decode it, so that it isn't copied into the heap
+     */
+    public static @NonNull TrailDecoder open(@NonNull FileChannel channel) throws IOException {
+        return new TrailDecoder(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+
+    public int getFixCount() {
+        int fixCount = 0;
+        for (int blockFixCount : blockFixCounts) {
+            fixCount += blockFixCount;
+        }
+        return fixCount;
+    }
+
+    /**
+     * Move before the first fix
+     */
+    public void rewind() {
+        nextBlock = 0;
+        remainingInBlock = 0;
+        onFix = false;
+    }
+
+    /**
+     * Move to the next fix, returning false if there is none
+     */
+    public boolean next() {
+        if (remainingInBlock == 0) {
+            if (nextBlock == blockOffsets.length) {
+                onFix = false;
+                return false;
+            }
+
+            // A keyframe with absolute values starts every block
+            buffer.position((int) blockOffsets[nextBlock]);
+            remainingInBlock = blockFixCounts[nextBlock] - 1;
+            nextBlock++;
+
+            latitude = buffer.getInt();
+            longitude = buffer.getInt();
+            time = buffer.getLong();
+        } else {
+            remainingInBlock--;
+            latitude += (int) unzigzag(getVarLong());
+            longitude += (int) unzigzag(getVarLong());
+            time += unzigzag(getVarLong());
+        }
+
+        onFix = true;
+        return true;
+    }
+
+    /**
+     * Move to the first fix at or after the time, returning false if there is none
+     */
+    public boolean seek(long targetTime) {
+        // Find the last block that starts at or before the time
+        int low = 0;
+        int high = blockFirstTimes.length - 1;
+        int block = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (blockFirstTimes[middle] <= targetTime) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        nextBlock = block;
+        remainingInBlock = 0;
+        while (next()) {
+            if (time >= targetTime) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public double getLatitude() {
+        checkOnFix();
+        return latitude / TrailEncoder.FIXED_POINT_SCALE;
+    }
+
+    public double getLongitude() {
+        checkOnFix();
+        return longitude / TrailEncoder.FIXED_POINT_SCALE;
+    }
+
+    public long getTime() {
+        checkOnFix();
+        return time;
+    }
+
+    private void checkOnFix() {
+        if (!onFix) {
+            throw new IllegalStateException("Decoder is not on a fix");
+        }
+    }
+
+    private long getVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in trail");
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
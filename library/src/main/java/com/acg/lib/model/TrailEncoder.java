@@ -0,0 +1,184 @@
+package com.acg.lib.model;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Streams a trail of fixes into a compact format that TrailDecoder reads back
+ *
+ * Coordinates are stored in fixed point with 7 decimals (about 1cm), and times in ms. The trail is split into blocks,
+ * each starting with a keyframe of absolute values, followed by the differences from the previous fix as zigzag
+ * varints, which take a few bytes per fix for a regular trail. A footer indexes the keyframes by time, so the decoder
+ * can seek without reading the whole trail.
+ *
+ * Layout: header (magic, version, keyframe interval), blocks, keyframe index (offset, first time and fix count of
+ * each block), trailer (block count, index offset, magic)
+ *
+ * Appending doesn't allocate, except to grow the keyframe index once per block now and then.
+ */
+public final class TrailEncoder {
+
+    static final int MAGIC = 0x41434752;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 12;
+    static final int INDEX_ENTRY_BYTES = 8 + 8 + 4;
+    static final int TRAILER_BYTES = 4 + 8 + 4;
+    static final double FIXED_POINT_SCALE = 1e7;
+
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+    public static final int DEFAULT_BUFFER_BYTES = 8192;
+
+    // A delta fix is at most three 10 byte varints, which is more than a keyframe takes
+    private static final int MAX_FIX_BYTES = 3 * 10;
+
+    private final @NonNull ByteBuffer buffer;
+    private final WritableByteChannel channel;
+    private final int keyframeInterval;
+
+    // Bytes already flushed to the channel, so that offsets are for the whole trail
+    private long flushedBytes;
+
+    private long[] blockOffsets = new long[16];
+    private long[] blockFirstTimes = new long[16];
+    private int[] blockFixCounts = new int[16];
+    private int blockCount = 0;
+
+    private int previousLatitude;
+    private int previousLongitude;
+    private long previousTime;
+    private boolean finished = false;
+
+    /**
+     * Encode into a buffer, which must be large enough for the whole trail
+     */
+    public TrailEncoder(@NonNull ByteBuffer buffer) {
+        this(buffer, null, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Encode into a channel, such as a FileChannel, through a buffer that is flushed whenever it fills up
+     */
+    public TrailEncoder(@NonNull WritableByteChannel channel) {
+        this(ByteBuffer.allocateDirect(DEFAULT_BUFFER_BYTES), channel, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    public TrailEncoder(@NonNull ByteBuffer buffer, WritableByteChannel channel, int keyframeInterval) {
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("Keyframe interval must be positive");
+        }
+
+        this.buffer = buffer;
+        this.channel = channel;
+        this.keyframeInterval = keyframeInterval;
+
+        // Offsets are from the start of the trail, wherever it starts in the buffer
+        this.flushedBytes = -buffer.position();
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(keyframeInterval);
+    }
+
+    public void append(@NonNull Location location) throws IOException {
+        append(location.getLatitude(), location.getLongitude(), location.getTime());
+    }
+
+    public void append(double latitude, double longitude, long time) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Trail is already finished");
+        }
+
+        ensureRemaining(MAX_FIX_BYTES);
+
+        int fixedLatitude = toFixedPoint(latitude);
+        int fixedLongitude = toFixedPoint(longitude);
+
+        if (blockCount == 0 || blockFixCounts[blockCount - 1] == keyframeInterval) {
+            startBlock(time);
+            buffer.putInt(fixedLatitude).putInt(fixedLongitude).putLong(time);
+        } else {
+            putVarLong(zigzag((long) fixedLatitude - previousLatitude));
+            putVarLong(zigzag((long) fixedLongitude - previousLongitude));
+            putVarLong(zigzag(time - previousTime));
+        }
+
+        blockFixCounts[blockCount - 1]++;
+        previousLatitude = fixedLatitude;
+        previousLongitude = fixedLongitude;
+        previousTime = time;
+    }
+
+    /**
+     * Write the keyframe index and trailer, and flush everything to the channel
+     * Nothing can be appended afterward
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        long indexOffset = position();
+        for (int i = 0; i < blockCount; i++) {
+            ensureRemaining(INDEX_ENTRY_BYTES);
+            buffer.putLong(blockOffsets[i]).putLong(blockFirstTimes[i]).putInt(blockFixCounts[i]);
+        }
+
+        ensureRemaining(TRAILER_BYTES);
+        buffer.putInt(blockCount).putLong(indexOffset).putInt(MAGIC);
+        flush();
+    }
+
+    private void startBlock(long time) {
+        if (blockCount == blockOffsets.length) {
+            int capacity = blockCount * 2;
+            blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+            blockFirstTimes = Arrays.copyOf(blockFirstTimes, capacity);
+            blockFixCounts = Arrays.copyOf(blockFixCounts, capacity);
+        }
+
+        blockOffsets[blockCount] = position();
+        blockFirstTimes[blockCount] = time;
+        blockFixCounts[blockCount] = 0;
+        blockCount++;
+    }
+
+    private long position() {
+        return flushedBytes + buffer.position();
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (channel != null && buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushedBytes += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static int toFixedPoint(double degrees) {
+        return (int) Math.round(degrees * FIXED_POINT_SCALE);
+    }
+}
@@ -0,0 +1,17 @@
+package com.acg.lib.subscription;
+
+/**
+ * How resources are buffered for a subscriber that hasn't taken them yet
+ */
+public enum DeliveryMode {
+
+    /**
+     * Deliver every resource, buffering up to a limit and dropping the oldest beyond it
+     */
+    ALL,
+
+    /**
+     * Only keep the newest resource, so that slow subscribers skip resources they would never catch up with
+     */
+    CONFLATED
+}
@@ -0,0 +1,79 @@
+package com.acg.lib.subscription;
+
+import android.os.Handler;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Gathers resources into batches and publishes each batch at once, when it is full or when its window has passed
+ * since its first resource, whichever comes first
+ *
+ * The batcher is not thread safe: add resources on the thread of the handler, which also runs the window timer.
+ */
+public final class ResourceBatcher<T> {
+
+    public static final long NO_WINDOW = 0;
+
+    private final @NonNull ResourcePublisher<List<T>> batchPublisher;
+    private final @NonNull Handler handler;
+    private final long windowMillis;
+    private final int maxBatchSize;
+
+    private List<T> batch = new ArrayList<>();
+
+    private final Runnable flushOnWindow = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Without a window, batches are only published when they are full or flushed
+     */
+    public ResourceBatcher(@NonNull ResourcePublisher<List<T>> batchPublisher, @NonNull Handler handler, long windowMillis, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batches must hold at least one resource");
+        }
+
+        this.batchPublisher = batchPublisher;
+        this.handler = handler;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void add(@NonNull T resource) {
+        batch.add(resource);
+
+        if (batch.size() >= maxBatchSize) {
+            flush();
+        } else if (batch.size() == 1 && windowMillis > NO_WINDOW) {
+            handler.postDelayed(flushOnWindow, windowMillis);
+        }
+    }
+
+    /**
+     * Publish whatever is in the current batch right away
+     */
+    public void flush() {
+        handler.removeCallbacks(flushOnWindow);
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<T> fullBatch = Collections.unmodifiableList(batch);
+        batch = new ArrayList<>();
+        batchPublisher.publish(fullBatch);
+    }
+
+    /**
+     * Drop the current batch without publishing it
+     */
+    public void clear() {
+        handler.removeCallbacks(flushOnWindow);
+        batch = new ArrayList<>();
+    }
+}
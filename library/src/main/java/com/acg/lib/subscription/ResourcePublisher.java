@@ -0,0 +1,192 @@
+package com.acg.lib.subscription;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Publishes resources to subscribers, each on its own executor, with its own demand and delivery mode
+ *
+ * Publishing never blocks on subscribers: resources are buffered per subscriber, and delivered by draining the buffer
+ * on the subscriber's executor. A new subscriber first gets the newest resource, if there is one.
+ */
+public final class ResourcePublisher<T> {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64;
+
+    private final int bufferSize;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile T latestResource;
+
+    public ResourcePublisher() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * The buffer size bounds how many resources are kept for each subscriber in DeliveryMode.ALL
+     */
+    public ResourcePublisher(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public @NonNull ResourceSubscription subscribe(@NonNull ResourceSubscriber<T> subscriber, @NonNull Executor executor, @NonNull DeliveryMode deliveryMode) {
+        Subscription subscription = new Subscription(subscriber, executor, deliveryMode);
+        subscriber.onSubscribe(subscription);
+
+        // Add before replaying, so that a resource published meanwhile can be repeated but never missed
+        subscriptions.add(subscription);
+
+        T resource = latestResource;
+        if (resource != null) {
+            subscription.offer(resource);
+        }
+
+        return subscription;
+    }
+
+    public void publish(@NonNull T resource) {
+        latestResource = resource;
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(resource);
+        }
+    }
+
+    public void publishUnavailable() {
+        latestResource = null;
+        for (Subscription subscription : subscriptions) {
+            subscription.offerUnavailable();
+        }
+    }
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Delivery state for one subscriber
+     * Only one drain runs at a time, so the subscriber sees its callbacks in order
+     */
+    private final class Subscription implements ResourceSubscription, Runnable {
+
+        private final @NonNull ResourceSubscriber<T> subscriber;
+        private final @NonNull Executor executor;
+        private final @NonNull DeliveryMode deliveryMode;
+
+        private final Queue<T> pendingResources = new ArrayDeque<>();
+        private boolean pendingUnavailable = false;
+        private long requested = 0;
+        private boolean draining = false;
+        private boolean cancelled = false;
+
+        private Subscription(@NonNull ResourceSubscriber<T> subscriber, @NonNull Executor executor, @NonNull DeliveryMode deliveryMode) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.deliveryMode = deliveryMode;
+        }
+
+        private void offer(@NonNull T resource) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+
+                if (deliveryMode == DeliveryMode.CONFLATED || pendingResources.size() >= bufferSize) {
+                    pendingResources.poll();
+                }
+                pendingResources.add(resource);
+            }
+
+            drainIfNeeded();
+        }
+
+        private void offerUnavailable() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+
+                // Anything not delivered yet is out of date
+                pendingResources.clear();
+                pendingUnavailable = true;
+            }
+
+            drainIfNeeded();
+        }
+
+        @Override
+        public void request(long count) {
+            if (count <= 0) {
+                throw new IllegalArgumentException("Must request a positive number of resources");
+            }
+
+            synchronized (this) {
+                requested = requested > UNBOUNDED - count ? UNBOUNDED : requested + count;
+            }
+
+            drainIfNeeded();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                pendingResources.clear();
+                pendingUnavailable = false;
+            }
+
+            subscriptions.remove(this);
+        }
+
+        private void drainIfNeeded() {
+            synchronized (this) {
+                if (draining || !hasDeliverable()) {
+                    return;
+                }
+                draining = true;
+            }
+
+            executor.execute(this);
+        }
+
+        private boolean hasDeliverable() {
+            return !cancelled && (pendingUnavailable || (requested > 0 && !pendingResources.isEmpty()));
+        }
+
+        /**
+         * Drain on the subscriber's executor, calling the subscriber outside of the lock
+         */
+        @Override
+        public void run() {
+            while (true) {
+                T resource = null;
+                boolean unavailable;
+
+                synchronized (this) {
+                    if (!hasDeliverable()) {
+                        draining = false;
+                        return;
+                    }
+
+                    unavailable = pendingUnavailable;
+                    if (unavailable) {
+                        pendingUnavailable = false;
+                    } else {
+                        resource = pendingResources.poll();
+                        if (requested != UNBOUNDED) {
+                            requested--;
+                        }
+                    }
+                }
+
+                if (unavailable) {
+                    subscriber.onResourceUnavailable();
+                } else {
+                    subscriber.onResource(resource);
+                }
+            }
+        }
+    }
+}
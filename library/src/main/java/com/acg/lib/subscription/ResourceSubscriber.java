@@ -0,0 +1,26 @@
+package com.acg.lib.subscription;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Receives resources as they are published, instead of pulling them after a ready callback
+ * All callbacks for one subscription happen in order, on the executor the subscriber chose
+ */
+public interface ResourceSubscriber<T> {
+
+    /**
+     * Called when subscribing, before anything else, on the thread that subscribed
+     * Nothing is delivered until the subscriber requests it through the subscription
+     */
+    void onSubscribe(@NonNull ResourceSubscription subscription);
+
+    /**
+     * Called with each new resource, at most as many times as requested
+     */
+    void onResource(@NonNull T resource);
+
+    /**
+     * Called when the resource stops being available, which doesn't count against the requested number
+     */
+    void onResourceUnavailable();
+}
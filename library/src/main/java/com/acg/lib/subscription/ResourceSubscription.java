@@ -0,0 +1,22 @@
+package com.acg.lib.subscription;
+
+/**
+ * Lets a subscriber say how many resources it can take, and stop receiving them
+ */
+public interface ResourceSubscription {
+
+    /**
+     * Request that never runs out
+     */
+    long UNBOUNDED = Long.MAX_VALUE;
+
+    /**
+     * Add to the number of resources the subscriber can take
+     */
+    void request(long count);
+
+    /**
+     * Stop delivering to the subscriber, dropping anything not delivered yet
+     */
+    void cancel();
+}
@@ -10,7 +10,6 @@ import android.view.View;
 import com.acg.lib.validation.bitmap.BitmapValidator;
 import com.acg.lib.view.ValidatedViewWrapper;
 
-import java.util.Arrays;
 import java.util.List;
 
 import static com.acg.lib.validation.ValidationParameters.RANDOM_CHECK_INTERVAL_PARAMETER;
@@ -33,34 +32,12 @@ public final class ACGValidator {
     /**
      * Validates that the last n calling methods are the desired methods, in the order provided, working backward
      * This doesn't validate arguments so it's not that sensitive of a check
+     * Callers that verify often should keep a {@link CallSiteVerifier} instead, so the desired methods are only
+     * prepared once
      */
     public static boolean validateCallingMethods(@NonNull List<Pair<Class<?>, String>> desiredMethods) {
-        final Throwable t = new Throwable();
-        StackTraceElement[] stackTraceElements = t.getStackTrace();
-
-        if (stackTraceElements == null || stackTraceElements.length < 3) {
-            return false;
-        }
-
-        // We don't care about the first two elements, since they must always be this class and the caller
-        List<StackTraceElement> relevantElements = Arrays.asList(stackTraceElements).subList(2, stackTraceElements.length);
-
-        for (int i = 0; i < desiredMethods.size(); i++) {
-            Pair<Class<?>, String> desiredMethod = desiredMethods.get(i);
-            if (!validateCallingMethod(desiredMethod.first, desiredMethod.second, relevantElements.get(i))) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    private static <U> boolean validateCallingMethod(Class<U> desiredClass, String desiredMethodName, StackTraceElement callingMethodElement) {
-        try {
-            return desiredClass.equals(Class.forName(callingMethodElement.getClassName())) && desiredMethodName.equals(callingMethodElement.getMethodName());
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException("Unable to load class in stack trace", e);
-        }
+        // Skip this frame, since the caller is the one whose callers are validated
+        return new CallSiteVerifier(desiredMethods).verify(1);
     }
 
     /**
@@ -0,0 +1,67 @@
+package com.acg.lib.validation;
+
+import android.support.annotation.NonNull;
+import android.util.Pair;
+
+import java.util.List;
+
+/**
+ * Verifies that the methods calling into a method are the expected ones, in order, working backward
+ *
+ * The expected methods are precomputed once, and frames are compared by method and class name, so no class is ever
+ * looked up. Only as many frames as there are expected methods are compared, stopping at the first mismatch.
+ * This doesn't validate arguments so it's not that sensitive of a check.
+ */
+public final class CallSiteVerifier {
+
+    // Frames for the verification itself and for the method that is verifying its callers
+    private static final int VERIFIER_FRAMES = 2;
+
+    private final @NonNull String[] expectedClassNames;
+    private final @NonNull String[] expectedMethodNames;
+
+    public CallSiteVerifier(@NonNull List<Pair<Class<?>, String>> expectedMethods) {
+        int expectedMethodCount = expectedMethods.size();
+        this.expectedClassNames = new String[expectedMethodCount];
+        this.expectedMethodNames = new String[expectedMethodCount];
+
+        for (int i = 0; i < expectedMethodCount; i++) {
+            Pair<Class<?>, String> expectedMethod = expectedMethods.get(i);
+            expectedClassNames[i] = expectedMethod.first.getName();
+            expectedMethodNames[i] = expectedMethod.second;
+        }
+    }
+
+    /**
+     * Verify that the callers of the method calling this are the expected methods
+     */
+    public boolean verify() {
+        // Skip this frame
+        return verify(1);
+    }
+
+    /**
+     * Verify the callers, skipping some frames between this and the method whose callers are verified
+     */
+    boolean verify(int skippedFrames) {
+        return verifyFrames(new Throwable().getStackTrace(), VERIFIER_FRAMES + skippedFrames);
+    }
+
+    private boolean verifyFrames(StackTraceElement[] stackTraceElements, int firstFrame) {
+        if (stackTraceElements == null || stackTraceElements.length < firstFrame + expectedMethodNames.length) {
+            return false;
+        }
+
+        for (int i = 0; i < expectedMethodNames.length; i++) {
+            StackTraceElement callingMethodElement = stackTraceElements[firstFrame + i];
+
+            // A class's name identifies it for the loader that runs us, so comparing names is enough
+            if (!expectedMethodNames[i].equals(callingMethodElement.getMethodName()) ||
+                    !expectedClassNames[i].equals(callingMethodElement.getClassName())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -6,6 +6,7 @@ package com.acg.lib.validation;
 public final class ValidationParameters {
     public static final String RANDOM_CHECK_INTERVAL_PARAMETER = "randomCheckInterval";
     public static final String RANDOM_CHECK_INVALIDATION_PARAMETER = "randomCheckInvalidation";
+    public static final String RELATIVE_SIZES_PARAMETER = "relativeSizes";
 
     public static final Integer DEFAULT_RANDOM_CHECK_INTERVAL = 1000;
     public static final Integer DEFAULT_RANDOM_CHECK_INVALIDATION = 1000;
@@ -0,0 +1,54 @@
+package com.acg.lib.validation.bitmap;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.view.View;
+import com.acg.lib.view.ValidatedViewWrapper;
+
+/**
+ * Captures the part of the screen where an ACG should be, so that bitmap validators can compare it to references
+ */
+public final class BitmapCapture {
+
+    private BitmapCapture() {
+    }
+
+    /**
+     * Render the cropped boundaries of the root view of an ACG into a scratch bitmap from the ScratchPool
+     * The bitmap is only valid until the next capture
+     */
+    public static @NonNull Bitmap captureBoundaries(@NonNull ValidatedViewWrapper view, @NonNull Rect boundariesForView) {
+        View root = view.getRootView();
+
+        // Get state to return to
+        boolean drawingCacheEnabled = root.isDrawingCacheEnabled();
+        boolean willNotDraw = root.willNotDraw();
+        boolean willNotCacheDrawing = root.willNotCacheDrawing();
+
+        // Enable drawing cache
+        setDrawingState(root, true, false, false);
+
+        // Get a scratch bitmap with the boundary width and height
+        int boundaryWidth = boundariesForView.width();
+        int boundaryHeight = boundariesForView.height();
+        Bitmap acgLocationBitmap = ScratchPool.captureBitmap(boundaryWidth, boundaryHeight);
+
+        // Render the cropped view to a canvas straight from the cache, before returning to state discards it
+        Canvas canvas = new Canvas(acgLocationBitmap);
+        Rect shiftedBoundaries = new Rect(0, 0, boundaryWidth, boundaryHeight);
+        canvas.drawBitmap(root.getDrawingCache(), boundariesForView, shiftedBoundaries, null);
+
+        // Return to state
+        setDrawingState(root, drawingCacheEnabled, willNotDraw, willNotCacheDrawing);
+
+        return acgLocationBitmap;
+    }
+
+    private static void setDrawingState(View root, boolean drawingCacheEnabled, boolean willNotDraw, boolean willNotCacheDrawing) {
+        root.setDrawingCacheEnabled(drawingCacheEnabled);
+        root.setWillNotDraw(willNotDraw);
+        root.setWillNotCacheDrawing(willNotCacheDrawing);
+    }
+}
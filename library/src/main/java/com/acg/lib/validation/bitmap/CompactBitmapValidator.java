@@ -0,0 +1,33 @@
+package com.acg.lib.validation.bitmap;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import com.acg.lib.validation.bitmap.encoding.EncodedBitmap;
+import com.acg.lib.validation.bitmap.encoding.EncodedBitmaps;
+import com.acg.lib.view.ValidatedViewWrapper;
+
+/**
+ * Validates a single bitmap with no state, keeping the reference in a compact encoding
+ */
+public class CompactBitmapValidator implements MeasurableBitmapValidator {
+
+    protected final @NonNull EncodedBitmap bitmap;
+
+    public CompactBitmapValidator(@NonNull Bitmap bitmap) {
+        this.bitmap = EncodedBitmaps.encode(bitmap);
+    }
+
+    @Override
+    public boolean validateBitmapForView(@NonNull ValidatedViewWrapper view, @NonNull Rect boundariesForView) {
+        Bitmap acgLocationBitmap = BitmapCapture.captureBoundaries(view, boundariesForView);
+
+        // Validate the bitmap
+        return bitmap.sameAs(acgLocationBitmap);
+    }
+
+    @Override
+    public long getReferenceByteCount() {
+        return bitmap.getByteCount();
+    }
+}
@@ -0,0 +1,77 @@
+package com.acg.lib.validation.bitmap;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import com.acg.lib.validation.bitmap.encoding.EncodedBitmap;
+import com.acg.lib.validation.bitmap.encoding.EncodedBitmaps;
+import com.acg.lib.view.ValidatedViewWrapper;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates a bitmap based on some state for a ValidatedViewWrapper, keeping the references in compact encodings
+ * References are held in a flat array indexed by the state index of the view
+ */
+public class CompactStatefulBitmapValidator implements MeasurableBitmapValidator {
+
+    protected final @NonNull EncodedBitmap[][] bitmapsForStates;
+
+    public CompactStatefulBitmapValidator(@NonNull Map<ValidatedViewWrapper, List<Bitmap>> bitmapsForViews) {
+        this.bitmapsForStates = initBitmapsForStates(bitmapsForViews);
+    }
+
+    @Override
+    public boolean validateBitmapForView(@NonNull ValidatedViewWrapper view, @NonNull Rect boundariesForView) {
+        Bitmap bitmap = BitmapCapture.captureBoundaries(view, boundariesForView);
+
+        // Validate the bitmap
+        return validateBitmap(view.internalViewStateIndex(), bitmap);
+    }
+
+    /**
+     * Validate a bitmap is one of the possible ones for a given state
+     */
+    private boolean validateBitmap(int stateIndex, @NonNull Bitmap acgLocationBitmap) {
+        if (stateIndex < 0 || stateIndex >= bitmapsForStates.length || bitmapsForStates[stateIndex] == null) {
+            return false;
+        }
+
+        for (EncodedBitmap bitmap : bitmapsForStates[stateIndex]) {
+            if (bitmap.sameAs(acgLocationBitmap)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    protected @NonNull EncodedBitmap[][] initBitmapsForStates(@NonNull Map<ValidatedViewWrapper, List<Bitmap>> bitmapsForViews) {
+        EncodedBitmap[][] bitmapsForStates = new EncodedBitmap[ViewStates.stateCountFor(bitmapsForViews.keySet())][];
+
+        for (ValidatedViewWrapper view : bitmapsForViews.keySet()) {
+            List<Bitmap> bitmaps = bitmapsForViews.get(view);
+            EncodedBitmap[] encodedBitmaps = new EncodedBitmap[bitmaps.size()];
+            for (int i = 0; i < encodedBitmaps.length; i++) {
+                encodedBitmaps[i] = EncodedBitmaps.encode(bitmaps.get(i));
+            }
+            bitmapsForStates[view.internalViewStateIndex()] = encodedBitmaps;
+        }
+
+        return bitmapsForStates;
+    }
+
+    @Override
+    public long getReferenceByteCount() {
+        long byteCount = 0;
+        for (EncodedBitmap[] bitmaps : bitmapsForStates) {
+            if (bitmaps != null) {
+                for (EncodedBitmap bitmap : bitmaps) {
+                    byteCount += bitmap.getByteCount();
+                }
+            }
+        }
+        return byteCount;
+    }
+}
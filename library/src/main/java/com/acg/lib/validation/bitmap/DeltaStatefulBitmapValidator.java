@@ -0,0 +1,208 @@
+package com.acg.lib.validation.bitmap;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import com.acg.lib.validation.bitmap.encoding.EncodedBitmap;
+import com.acg.lib.validation.bitmap.encoding.EncodedBitmaps;
+import com.acg.lib.view.ValidatedViewWrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates a bitmap based on some state for a ValidatedViewWrapper, storing one shared base image plus a small
+ * delta for each state
+ *
+ * States of the same ACG usually differ only in their label. The references are split into the delta region, which
+ * is the bounding box of every pixel that differs between states, and the shared region outside of it. The shared
+ * region is stored and checked once, and only the delta region is stored and checked for each state.
+ * Deltas are held in a flat array indexed by the state index of the view.
+ */
+public class DeltaStatefulBitmapValidator implements MeasurableBitmapValidator {
+
+    protected final int width;
+    protected final int height;
+    protected final @NonNull Rect deltaRegion;
+    protected final @NonNull EncodedBitmap base;
+    protected final @NonNull EncodedBitmap[][] deltasForStates;
+
+    public DeltaStatefulBitmapValidator(@NonNull Map<ValidatedViewWrapper, List<Bitmap>> bitmapsForViews) {
+        // Read the pixels of every reference, keeping track of their states
+        List<Integer> stateIndices = new ArrayList<>();
+        List<int[]> references = new ArrayList<>();
+        Bitmap first = null;
+
+        for (ValidatedViewWrapper view : bitmapsForViews.keySet()) {
+            for (Bitmap bitmap : bitmapsForViews.get(view)) {
+                if (first == null) {
+                    first = bitmap;
+                } else if (bitmap.getWidth() != first.getWidth() || bitmap.getHeight() != first.getHeight()) {
+                    throw new IllegalArgumentException("Delta references must all have the same size");
+                }
+                stateIndices.add(view.internalViewStateIndex());
+                references.add(pixelsFor(bitmap));
+            }
+        }
+
+        if (first == null) {
+            throw new IllegalArgumentException("At least one reference bitmap is required");
+        }
+
+        this.width = first.getWidth();
+        this.height = first.getHeight();
+
+        // The delta region covers every pixel that differs from the first reference in any state
+        int[] basePixels = references.get(0);
+        this.deltaRegion = new Rect();
+        for (int[] pixels : references) {
+            deltaRegion.union(differingRegion(basePixels, pixels));
+        }
+
+        this.base = EncodedBitmaps.encode(withoutDeltaRegion(basePixels), width, height);
+
+        this.deltasForStates = new EncodedBitmap[ViewStates.stateCountFor(bitmapsForViews.keySet())][];
+        for (int i = 0; i < references.size(); i++) {
+            EncodedBitmap delta = EncodedBitmaps.encode(cropToDeltaRegion(references.get(i)), deltaRegion.width(), deltaRegion.height());
+            deltasForStates[stateIndices.get(i)] = withDelta(deltasForStates[stateIndices.get(i)], delta);
+        }
+    }
+
+    @Override
+    public boolean validateBitmapForView(@NonNull ValidatedViewWrapper view, @NonNull Rect boundariesForView) {
+        Bitmap bitmap = BitmapCapture.captureBoundaries(view, boundariesForView);
+
+        // Validate the bitmap
+        return validateBitmap(view.internalViewStateIndex(), bitmap);
+    }
+
+    /**
+     * Validate the shared region once, and the delta region against each of the deltas for a given state
+     */
+    private boolean validateBitmap(int stateIndex, @NonNull Bitmap acgLocationBitmap) {
+        if (stateIndex < 0 || stateIndex >= deltasForStates.length || deltasForStates[stateIndex] == null) {
+            return false;
+        }
+
+        if (acgLocationBitmap.getWidth() != width || acgLocationBitmap.getHeight() != height) {
+            return false;
+        }
+
+        EncodedBitmap[] deltas = deltasForStates[stateIndex];
+        boolean[] deltaMatches = new boolean[deltas.length];
+        int remainingDeltas = deltas.length;
+        for (int i = 0; i < deltaMatches.length; i++) {
+            deltaMatches[i] = true;
+        }
+
+        int[] row = ScratchPool.rowBuffer(0, width);
+        int[] deltaRow = ScratchPool.rowBuffer(1, deltaRegion.width());
+
+        for (int y = 0; y < height; y++) {
+            acgLocationBitmap.getPixels(row, 0, width, 0, y, width, 1);
+
+            // Outside of the delta region, every state looks like the base
+            if (y < deltaRegion.top || y >= deltaRegion.bottom) {
+                if (!base.rowMatches(y, row, 0, width)) {
+                    return false;
+                }
+                continue;
+            }
+
+            if (!base.rowMatches(y, row, 0, deltaRegion.left) || !base.rowMatches(y, row, deltaRegion.right, width)) {
+                return false;
+            }
+
+            // Inside of it, only the deltas for this state can match
+            System.arraycopy(row, deltaRegion.left, deltaRow, 0, deltaRegion.width());
+            for (int i = 0; i < deltaMatches.length; i++) {
+                if (deltaMatches[i] && !deltas[i].rowMatches(y - deltaRegion.top, deltaRow, 0, deltaRegion.width())) {
+                    deltaMatches[i] = false;
+                    remainingDeltas--;
+                }
+            }
+
+            if (remainingDeltas == 0) {
+                return false;
+            }
+        }
+
+        return remainingDeltas > 0;
+    }
+
+    private static @NonNull EncodedBitmap[] withDelta(EncodedBitmap[] deltas, @NonNull EncodedBitmap delta) {
+        if (deltas == null) {
+            return new EncodedBitmap[]{delta};
+        }
+
+        EncodedBitmap[] withDelta = Arrays.copyOf(deltas, deltas.length + 1);
+        withDelta[deltas.length] = delta;
+        return withDelta;
+    }
+
+    private static @NonNull int[] pixelsFor(@NonNull Bitmap bitmap) {
+        int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        return pixels;
+    }
+
+    /**
+     * Get the bounding box of the pixels that differ between two references
+     */
+    private @NonNull Rect differingRegion(@NonNull int[] pixels, @NonNull int[] otherPixels) {
+        Rect region = new Rect();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (pixels[y * width + x] != otherPixels[y * width + x]) {
+                    region.union(x, y, x + 1, y + 1);
+                }
+            }
+        }
+
+        return region;
+    }
+
+    /**
+     * Copy the base pixels with the delta region filled in from its left neighbour, since it is never compared and
+     * a flat fill keeps the encoding small
+     */
+    private @NonNull int[] withoutDeltaRegion(@NonNull int[] pixels) {
+        int[] shared = pixels.clone();
+
+        for (int y = deltaRegion.top; y < deltaRegion.bottom; y++) {
+            int fill = deltaRegion.left > 0 ? shared[y * width + deltaRegion.left - 1] : 0;
+            for (int x = deltaRegion.left; x < deltaRegion.right; x++) {
+                shared[y * width + x] = fill;
+            }
+        }
+
+        return shared;
+    }
+
+    private @NonNull int[] cropToDeltaRegion(@NonNull int[] pixels) {
+        int deltaWidth = deltaRegion.width();
+        int[] delta = new int[deltaWidth * deltaRegion.height()];
+
+        for (int y = deltaRegion.top; y < deltaRegion.bottom; y++) {
+            System.arraycopy(pixels, y * width + deltaRegion.left, delta, (y - deltaRegion.top) * deltaWidth, deltaWidth);
+        }
+
+        return delta;
+    }
+
+    @Override
+    public long getReferenceByteCount() {
+        long byteCount = base.getByteCount();
+        for (EncodedBitmap[] deltas : deltasForStates) {
+            if (deltas != null) {
+                for (EncodedBitmap delta : deltas) {
+                    byteCount += delta.getByteCount();
+                }
+            }
+        }
+        return byteCount;
+    }
+}
@@ -0,0 +1,417 @@
+package com.acg.lib.validation.bitmap;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Region;
+import android.support.annotation.NonNull;
+import android.view.View;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * A canvas without pixels that hashes the draw operations of a view as they are issued, instead of drawing them
+ *
+ * Nothing is rasterized or read back. Every operation contributes its arguments and the parts of its paint that
+ * change how it looks, and the calls that transform or clip the canvas contribute too, so the same drawing always
+ * hashes the same. Bitmaps only contribute their size and config, since their identity differs between instances of
+ * the same drawable; the pixel backstop of the fingerprint validator covers their contents. Operations that views
+ * rarely issue are passed on to the canvas, which has nothing to draw into, and so are not hashed.
+ *
+ * A hasher is reused across fingerprints, and must only be used from one thread.
+ */
+final class DrawOperationHasher extends Canvas {
+
+    private static final HashFunction FINGERPRINT_FUNCTION = Hashing.murmur3_128();
+
+    // One code per kind of operation, so that different operations with the same arguments hash differently
+    private static final int SAVE = 1;
+    private static final int RESTORE = 2;
+    private static final int RESTORE_TO_COUNT = 3;
+    private static final int TRANSLATE = 4;
+    private static final int SCALE = 5;
+    private static final int ROTATE = 6;
+    private static final int SKEW = 7;
+    private static final int CONCAT = 8;
+    private static final int SET_MATRIX = 9;
+    private static final int CLIP_RECT = 10;
+    private static final int CLIP_PATH = 11;
+    private static final int DRAW_COLOR = 12;
+    private static final int DRAW_PAINT = 13;
+    private static final int DRAW_LINE = 14;
+    private static final int DRAW_LINES = 15;
+    private static final int DRAW_RECT = 16;
+    private static final int DRAW_OVAL = 17;
+    private static final int DRAW_CIRCLE = 18;
+    private static final int DRAW_ARC = 19;
+    private static final int DRAW_ROUND_RECT = 20;
+    private static final int DRAW_PATH = 21;
+    private static final int DRAW_BITMAP = 22;
+    private static final int DRAW_TEXT = 23;
+
+    private final float[] matrixValues = new float[9];
+    private final RectF pathBounds = new RectF();
+    private Hasher hasher;
+
+    /**
+     * Hash everything the view draws, as it would draw itself into its parent
+     */
+    long fingerprintFor(@NonNull View view) {
+        hasher = FINGERPRINT_FUNCTION.newHasher();
+        int saveCount = super.save();
+        view.draw(this);
+        super.restoreToCount(saveCount);
+
+        long fingerprint = hasher.hash().asLong();
+        hasher = null;
+        return fingerprint;
+    }
+
+    @Override
+    public boolean isHardwareAccelerated() {
+        return false;
+    }
+
+    // Canvas state
+
+    @Override
+    public int save() {
+        hasher.putInt(SAVE);
+        return super.save();
+    }
+
+    @Override
+    public int save(int saveFlags) {
+        hasher.putInt(SAVE).putInt(saveFlags);
+        return super.save(saveFlags);
+    }
+
+    @Override
+    public void restore() {
+        hasher.putInt(RESTORE);
+        super.restore();
+    }
+
+    @Override
+    public void restoreToCount(int saveCount) {
+        hasher.putInt(RESTORE_TO_COUNT).putInt(saveCount);
+        super.restoreToCount(saveCount);
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        hasher.putInt(TRANSLATE).putFloat(dx).putFloat(dy);
+        super.translate(dx, dy);
+    }
+
+    @Override
+    public void scale(float sx, float sy) {
+        hasher.putInt(SCALE).putFloat(sx).putFloat(sy);
+        super.scale(sx, sy);
+    }
+
+    @Override
+    public void rotate(float degrees) {
+        hasher.putInt(ROTATE).putFloat(degrees);
+        super.rotate(degrees);
+    }
+
+    @Override
+    public void skew(float sx, float sy) {
+        hasher.putInt(SKEW).putFloat(sx).putFloat(sy);
+        super.skew(sx, sy);
+    }
+
+    @Override
+    public void concat(Matrix matrix) {
+        hasher.putInt(CONCAT);
+        putMatrix(matrix);
+        super.concat(matrix);
+    }
+
+    @Override
+    public void setMatrix(Matrix matrix) {
+        hasher.putInt(SET_MATRIX);
+        putMatrix(matrix);
+        super.setMatrix(matrix);
+    }
+
+    @Override
+    public boolean clipRect(@NonNull RectF rect, @NonNull Region.Op op) {
+        putClipRect(rect.left, rect.top, rect.right, rect.bottom, op);
+        return super.clipRect(rect, op);
+    }
+
+    @Override
+    public boolean clipRect(@NonNull Rect rect, @NonNull Region.Op op) {
+        putClipRect(rect.left, rect.top, rect.right, rect.bottom, op);
+        return super.clipRect(rect, op);
+    }
+
+    @Override
+    public boolean clipRect(@NonNull RectF rect) {
+        putClipRect(rect.left, rect.top, rect.right, rect.bottom, Region.Op.INTERSECT);
+        return super.clipRect(rect);
+    }
+
+    @Override
+    public boolean clipRect(@NonNull Rect rect) {
+        putClipRect(rect.left, rect.top, rect.right, rect.bottom, Region.Op.INTERSECT);
+        return super.clipRect(rect);
+    }
+
+    @Override
+    public boolean clipRect(float left, float top, float right, float bottom, @NonNull Region.Op op) {
+        putClipRect(left, top, right, bottom, op);
+        return super.clipRect(left, top, right, bottom, op);
+    }
+
+    @Override
+    public boolean clipRect(float left, float top, float right, float bottom) {
+        putClipRect(left, top, right, bottom, Region.Op.INTERSECT);
+        return super.clipRect(left, top, right, bottom);
+    }
+
+    @Override
+    public boolean clipRect(int left, int top, int right, int bottom) {
+        putClipRect(left, top, right, bottom, Region.Op.INTERSECT);
+        return super.clipRect(left, top, right, bottom);
+    }
+
+    @Override
+    public boolean clipPath(@NonNull Path path, @NonNull Region.Op op) {
+        hasher.putInt(CLIP_PATH).putInt(op.ordinal());
+        putPath(path);
+        return super.clipPath(path, op);
+    }
+
+    @Override
+    public boolean clipPath(@NonNull Path path) {
+        hasher.putInt(CLIP_PATH).putInt(Region.Op.INTERSECT.ordinal());
+        putPath(path);
+        return super.clipPath(path);
+    }
+
+    // Draw operations, which are only hashed, since there is nothing to draw into
+
+    @Override
+    public void drawRGB(int r, int g, int b) {
+        hasher.putInt(DRAW_COLOR).putInt(0xff000000 | r << 16 | g << 8 | b);
+    }
+
+    @Override
+    public void drawARGB(int a, int r, int g, int b) {
+        hasher.putInt(DRAW_COLOR).putInt(a << 24 | r << 16 | g << 8 | b);
+    }
+
+    @Override
+    public void drawColor(int color) {
+        hasher.putInt(DRAW_COLOR).putInt(color);
+    }
+
+    @Override
+    public void drawColor(int color, @NonNull PorterDuff.Mode mode) {
+        hasher.putInt(DRAW_COLOR).putInt(color).putInt(mode.ordinal());
+    }
+
+    @Override
+    public void drawPaint(@NonNull Paint paint) {
+        hasher.putInt(DRAW_PAINT);
+        putPaint(paint);
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, @NonNull Paint paint) {
+        hasher.putInt(DRAW_LINE).putFloat(startX).putFloat(startY).putFloat(stopX).putFloat(stopY);
+        putPaint(paint);
+    }
+
+    @Override
+    public void drawLines(@NonNull float[] points, int offset, int count, @NonNull Paint paint) {
+        hasher.putInt(DRAW_LINES);
+        for (int i = offset; i < offset + count; i++) {
+            hasher.putFloat(points[i]);
+        }
+        putPaint(paint);
+    }
+
+    @Override
+    public void drawLines(@NonNull float[] points, @NonNull Paint paint) {
+        drawLines(points, 0, points.length, paint);
+    }
+
+    @Override
+    public void drawRect(@NonNull RectF rect, @NonNull Paint paint) {
+        drawRect(rect.left, rect.top, rect.right, rect.bottom, paint);
+    }
+
+    @Override
+    public void drawRect(@NonNull Rect rect, @NonNull Paint paint) {
+        drawRect(rect.left, rect.top, rect.right, rect.bottom, paint);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, @NonNull Paint paint) {
+        hasher.putInt(DRAW_RECT).putFloat(left).putFloat(top).putFloat(right).putFloat(bottom);
+        putPaint(paint);
+    }
+
+    @Override
+    public void drawOval(@NonNull RectF oval, @NonNull Paint paint) {
+        drawOval(oval.left, oval.top, oval.right, oval.bottom, paint);
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, @NonNull Paint paint) {
+        hasher.putInt(DRAW_OVAL).putFloat(left).putFloat(top).putFloat(right).putFloat(bottom);
+        putPaint(paint);
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, @NonNull Paint paint) {
+        hasher.putInt(DRAW_CIRCLE).putFloat(cx).putFloat(cy).putFloat(radius);
+        putPaint(paint);
+    }
+
+    @Override
+    public void drawArc(@NonNull RectF oval, float startAngle, float sweepAngle, boolean useCenter, @NonNull Paint paint) {
+        drawArc(oval.left, oval.top, oval.right, oval.bottom, startAngle, sweepAngle, useCenter, paint);
+    }
+
+    @Override
+    public void drawArc(float left, float top, float right, float bottom, float startAngle, float sweepAngle, boolean useCenter, @NonNull Paint paint) {
+        hasher.putInt(DRAW_ARC).putFloat(left).putFloat(top).putFloat(right).putFloat(bottom)
+                .putFloat(startAngle).putFloat(sweepAngle).putBoolean(useCenter);
+        putPaint(paint);
+    }
+
+    @Override
+    public void drawRoundRect(@NonNull RectF rect, float rx, float ry, @NonNull Paint paint) {
+        drawRoundRect(rect.left, rect.top, rect.right, rect.bottom, rx, ry, paint);
+    }
+
+    @Override
+    public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, @NonNull Paint paint) {
+        hasher.putInt(DRAW_ROUND_RECT).putFloat(left).putFloat(top).putFloat(right).putFloat(bottom).putFloat(rx).putFloat(ry);
+        putPaint(paint);
+    }
+
+    @Override
+    public void drawPath(@NonNull Path path, @NonNull Paint paint) {
+        hasher.putInt(DRAW_PATH);
+        putPath(path);
+        putPaint(paint);
+    }
+
+    @Override
+    public void drawBitmap(@NonNull Bitmap bitmap, float left, float top, Paint paint) {
+        hasher.putInt(DRAW_BITMAP).putFloat(left).putFloat(top);
+        putBitmap(bitmap, paint);
+    }
+
+    @Override
+    public void drawBitmap(@NonNull Bitmap bitmap, Rect src, @NonNull RectF dst, Paint paint) {
+        hasher.putInt(DRAW_BITMAP).putFloat(dst.left).putFloat(dst.top).putFloat(dst.right).putFloat(dst.bottom);
+        putBitmap(bitmap, paint);
+    }
+
+    @Override
+    public void drawBitmap(@NonNull Bitmap bitmap, Rect src, @NonNull Rect dst, Paint paint) {
+        hasher.putInt(DRAW_BITMAP).putFloat(dst.left).putFloat(dst.top).putFloat(dst.right).putFloat(dst.bottom);
+        putBitmap(bitmap, paint);
+    }
+
+    @Override
+    public void drawBitmap(@NonNull Bitmap bitmap, @NonNull Matrix matrix, Paint paint) {
+        hasher.putInt(DRAW_BITMAP);
+        putMatrix(matrix);
+        putBitmap(bitmap, paint);
+    }
+
+    @Override
+    public void drawText(@NonNull char[] text, int index, int count, float x, float y, @NonNull Paint paint) {
+        hasher.putInt(DRAW_TEXT);
+        for (int i = index; i < index + count; i++) {
+            hasher.putChar(text[i]);
+        }
+        putText(x, y, paint);
+    }
+
+    @Override
+    public void drawText(@NonNull String text, float x, float y, @NonNull Paint paint) {
+        drawText(text, 0, text.length(), x, y, paint);
+    }
+
+    @Override
+    public void drawText(@NonNull String text, int start, int end, float x, float y, @NonNull Paint paint) {
+        drawText((CharSequence) text, start, end, x, y, paint);
+    }
+
+    @Override
+    public void drawText(@NonNull CharSequence text, int start, int end, float x, float y, @NonNull Paint paint) {
+        hasher.putInt(DRAW_TEXT).putUnencodedChars(text.subSequence(start, end));
+        putText(x, y, paint);
+    }
+
+    @Override
+    public void drawTextRun(@NonNull char[] text, int index, int count, int contextIndex, int contextCount, float x, float y, boolean isRtl, @NonNull Paint paint) {
+        drawText(text, index, count, x, y, paint);
+        hasher.putBoolean(isRtl);
+    }
+
+    @Override
+    public void drawTextRun(@NonNull CharSequence text, int start, int end, int contextStart, int contextEnd, float x, float y, boolean isRtl, @NonNull Paint paint) {
+        drawText(text, start, end, x, y, paint);
+        hasher.putBoolean(isRtl);
+    }
+
+    private void putClipRect(float left, float top, float right, float bottom, @NonNull Region.Op op) {
+        hasher.putInt(CLIP_RECT).putFloat(left).putFloat(top).putFloat(right).putFloat(bottom).putInt(op.ordinal());
+    }
+
+    private void putMatrix(Matrix matrix) {
+        if (matrix == null) {
+            hasher.putBoolean(false);
+            return;
+        }
+
+        matrix.getValues(matrixValues);
+        for (float value : matrixValues) {
+            hasher.putFloat(value);
+        }
+    }
+
+    /**
+     * Paths can't be walked, so they contribute their bounds and how they are filled
+     */
+    private void putPath(@NonNull Path path) {
+        path.computeBounds(pathBounds, true);
+        hasher.putFloat(pathBounds.left).putFloat(pathBounds.top).putFloat(pathBounds.right).putFloat(pathBounds.bottom)
+                .putInt(path.getFillType().ordinal());
+    }
+
+    private void putBitmap(@NonNull Bitmap bitmap, Paint paint) {
+        hasher.putInt(bitmap.getWidth()).putInt(bitmap.getHeight()).putInt(bitmap.getConfig() == null ? -1 : bitmap.getConfig().ordinal());
+        if (paint != null) {
+            putPaint(paint);
+        }
+    }
+
+    private void putText(float x, float y, @NonNull Paint paint) {
+        hasher.putFloat(x).putFloat(y).putFloat(paint.getTextSize()).putFloat(paint.getTextScaleX()).putFloat(paint.getTextSkewX())
+                .putInt(paint.getTypeface() == null ? -1 : paint.getTypeface().getStyle());
+        putPaint(paint);
+    }
+
+    private void putPaint(@NonNull Paint paint) {
+        hasher.putInt(paint.getColor()).putInt(paint.getFlags()).putInt(paint.getStyle().ordinal())
+                .putFloat(paint.getStrokeWidth()).putBoolean(paint.getShader() != null)
+                .putBoolean(paint.getColorFilter() != null).putBoolean(paint.getXfermode() != null);
+    }
+}
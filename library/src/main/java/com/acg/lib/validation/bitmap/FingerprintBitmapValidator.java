@@ -0,0 +1,136 @@
+package com.acg.lib.validation.bitmap;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.view.View;
+import com.acg.lib.view.ValidatedViewWrapper;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Validates an ACG by what it draws instead of by what ends up on the screen, which is much cheaper than capturing
+ * pixels through the drawing cache
+ *
+ * The draw operations of the ACG are hashed as it issues them, without rasterizing anything or reading pixels back,
+ * and compared against the fingerprints of the views rendered in isolation for the same state. A fingerprint can't see
+ * anything drawn on top of the ACG, or what is inside its bitmaps, so the pixel validator still runs as a backstop, at
+ * most every so many validations or milliseconds, and whenever the fingerprint doesn't match.
+ *
+ * Validators are shared between instances of an ACG, so when the last pixel check ran is kept for each wrapper.
+ */
+public class FingerprintBitmapValidator implements MeasurableBitmapValidator {
+
+    public static final int DEFAULT_PIXEL_CHECK_INTERVAL = 10;
+    public static final long DEFAULT_PIXEL_CHECK_MILLIS = 2000;
+
+    private final @NonNull BitmapValidator pixelValidator;
+    private final @NonNull long[][] fingerprintsForStates;
+    private final int pixelCheckInterval;
+    private final long pixelCheckMillis;
+
+    private final DrawOperationHasher drawOperationHasher = new DrawOperationHasher();
+    private final Map<ValidatedViewWrapper, PixelCheckState> pixelCheckStates = new WeakHashMap<>();
+
+    private static class PixelCheckState {
+        private int validationsSincePixelCheck = 0;
+        private long lastPixelCheckTimestamp = 0;
+        private boolean lastPixelCheckWasValid = false;
+    }
+
+    /**
+     * The views must be the ones the pixel references were rendered from, so that they are already laid out
+     */
+    public FingerprintBitmapValidator(@NonNull List<View> views, @NonNull BitmapValidator pixelValidator) {
+        this(views, pixelValidator, DEFAULT_PIXEL_CHECK_INTERVAL, DEFAULT_PIXEL_CHECK_MILLIS);
+    }
+
+    public FingerprintBitmapValidator(@NonNull List<View> views, @NonNull BitmapValidator pixelValidator, int pixelCheckInterval, long pixelCheckMillis) {
+        this.pixelValidator = pixelValidator;
+        this.pixelCheckInterval = pixelCheckInterval;
+        this.pixelCheckMillis = pixelCheckMillis;
+
+        int stateCount = 0;
+        for (View view : views) {
+            stateCount = Math.max(stateCount, ((ValidatedViewWrapper) view).viewStateCount());
+        }
+
+        this.fingerprintsForStates = new long[stateCount][];
+        for (View view : views) {
+            int stateIndex = ((ValidatedViewWrapper) view).internalViewStateIndex();
+            long[] fingerprints = fingerprintsForStates[stateIndex] == null ? new long[0] : fingerprintsForStates[stateIndex];
+            fingerprints = Arrays.copyOf(fingerprints, fingerprints.length + 1);
+            fingerprints[fingerprints.length - 1] = fingerprintFor(view);
+            fingerprintsForStates[stateIndex] = fingerprints;
+        }
+    }
+
+    @Override
+    public boolean validateBitmapForView(@NonNull ValidatedViewWrapper view, @NonNull Rect boundariesForView) {
+        PixelCheckState state = pixelCheckStates.get(view);
+        if (state == null) {
+            state = new PixelCheckState();
+            pixelCheckStates.put(view, state);
+        }
+
+        long nowTimeStamp = SystemClock.uptimeMillis();
+        boolean pixelCheckIsDue = state.validationsSincePixelCheck >= pixelCheckInterval || nowTimeStamp - state.lastPixelCheckTimestamp >= pixelCheckMillis;
+
+        // Between pixel checks, a matching fingerprint only counts if the last pixel check of this wrapper passed
+        if (!pixelCheckIsDue && state.lastPixelCheckWasValid && isFullyVisible(view, boundariesForView) && fingerprintMatches(view)) {
+            state.validationsSincePixelCheck++;
+            return true;
+        }
+
+        state.validationsSincePixelCheck = 0;
+        state.lastPixelCheckTimestamp = nowTimeStamp;
+        state.lastPixelCheckWasValid = pixelValidator.validateBitmapForView(view, boundariesForView);
+        return state.lastPixelCheckWasValid;
+    }
+
+    /**
+     * Check that nothing clips the ACG, which fingerprints would not notice
+     */
+    private boolean isFullyVisible(@NonNull ValidatedViewWrapper view, @NonNull Rect boundariesForView) {
+        Rect visibleRect = new Rect();
+        return view.isShown() && view.getGlobalVisibleRect(visibleRect) &&
+                visibleRect.width() == boundariesForView.width() && visibleRect.height() == boundariesForView.height();
+    }
+
+    private boolean fingerprintMatches(@NonNull ValidatedViewWrapper view) {
+        int stateIndex = view.internalViewStateIndex();
+        if (stateIndex < 0 || stateIndex >= fingerprintsForStates.length || fingerprintsForStates[stateIndex] == null) {
+            return false;
+        }
+
+        long fingerprint = fingerprintFor(view);
+        for (long reference : fingerprintsForStates[stateIndex]) {
+            if (reference == fingerprint) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private long fingerprintFor(@NonNull View view) {
+        return drawOperationHasher.fingerprintFor(view);
+    }
+
+    @Override
+    public long getReferenceByteCount() {
+        long byteCount = 0;
+        for (long[] fingerprints : fingerprintsForStates) {
+            byteCount += fingerprints == null ? 0 : 8L * fingerprints.length;
+        }
+
+        if (pixelValidator instanceof MeasurableBitmapValidator) {
+            byteCount += ((MeasurableBitmapValidator) pixelValidator).getReferenceByteCount();
+        }
+
+        return byteCount;
+    }
+}
@@ -0,0 +1,12 @@
+package com.acg.lib.validation.bitmap;
+
+/**
+ * A bitmap validator that can report how much memory its references use
+ */
+public interface MeasurableBitmapValidator extends BitmapValidator {
+
+    /**
+     * The number of bytes used to store the reference bitmaps
+     */
+    long getReferenceByteCount();
+}
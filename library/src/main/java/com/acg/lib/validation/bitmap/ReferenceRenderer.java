@@ -0,0 +1,15 @@
+package com.acg.lib.validation.bitmap;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+
+/**
+ * Renders the reference bitmap for an ACG in a given state index at a given size, on demand
+ */
+public interface ReferenceRenderer {
+
+    /**
+     * Render the reference, or return null if the ACG can't render right now
+     */
+    @Nullable Bitmap renderReference(int stateIndex, int width, int height);
+}
@@ -0,0 +1,14 @@
+package com.acg.lib.validation.bitmap;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Builds the references of an ACG instance, returning null from {@link #get()} if they can't be built right now
+ */
+public interface ReferenceSupplier extends Supplier<BitmapValidator> {
+
+    /**
+     * Whether the instance is gone for good, so that the supplier will never build references again
+     */
+    boolean isGone();
+}
@@ -0,0 +1,94 @@
+package com.acg.lib.validation.bitmap;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import com.acg.lib.memory.ACGMemory;
+import com.acg.lib.memory.Trimmable;
+
+/**
+ * Scratch buffers reused across validations, so that checking a bitmap does not allocate on every event
+ *
+ * Validation always runs on the UI thread, and buffers are only valid until the next validation, so callers must
+ * not hold on to them. The pool is released under memory pressure and refilled by the next validation.
+ */
+public final class ScratchPool implements Trimmable {
+
+    // Number of row buffers that may be in use at the same time
+    private static final int ROW_SLOTS = 2;
+
+    private static final ScratchPool INSTANCE = new ScratchPool();
+
+    static {
+        ACGMemory.addTrimmable(INSTANCE);
+    }
+
+    private Bitmap captureBitmap;
+    private final int[][] rows = new int[ROW_SLOTS][];
+
+    private ScratchPool() {
+    }
+
+    /**
+     * Get a cleared ARGB_8888 bitmap to capture the screen into
+     */
+    public static @NonNull Bitmap captureBitmap(int width, int height) {
+        Bitmap bitmap;
+        boolean allocated = false;
+
+        synchronized (INSTANCE) {
+            bitmap = INSTANCE.captureBitmap;
+            if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                INSTANCE.captureBitmap = bitmap;
+                allocated = true;
+            } else {
+                bitmap.eraseColor(0);
+            }
+        }
+
+        // Count the new bitmap against the memory cap outside of the pool lock
+        if (allocated) {
+            ACGMemory.retain(INSTANCE);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Get a buffer of at least the given length to read a row of pixels into
+     * Each slot has its own buffer, so a caller that needs two rows at once uses two slots
+     */
+    public static @NonNull int[] rowBuffer(int slot, int length) {
+        synchronized (INSTANCE) {
+            int[] row = INSTANCE.rows[slot];
+            if (row == null || row.length < length) {
+                row = new int[length];
+                INSTANCE.rows[slot] = row;
+            }
+            return row;
+        }
+    }
+
+    @Override
+    public synchronized void onTrimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return;
+        }
+
+        // The capture bitmap isn't recycled here, since the UI thread may still be comparing against it
+        captureBitmap = null;
+        for (int slot = 0; slot < ROW_SLOTS; slot++) {
+            rows[slot] = null;
+        }
+    }
+
+    @Override
+    public synchronized long getRetainedByteCount() {
+        long retained = captureBitmap == null ? 0 : captureBitmap.getByteCount();
+        for (int[] row : rows) {
+            retained += row == null ? 0 : 4L * row.length;
+        }
+        return retained;
+    }
+}
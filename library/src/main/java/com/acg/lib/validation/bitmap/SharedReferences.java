@@ -0,0 +1,49 @@
+package com.acg.lib.validation.bitmap;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide references, shared by every instance of the same ACG type
+ *
+ * Every instance of an ACG type renders the same references, so rendering them once per type keeps the number of
+ * validators bounded by the number of ACG types, no matter how many rows of a list show the ACG.
+ */
+public final class SharedReferences {
+
+    private static final Map<Class<?>, TrimmableBitmapValidator> REFERENCES_FOR_TYPES = new HashMap<>();
+
+    private SharedReferences() {
+    }
+
+    /**
+     * Get the references for an ACG type, building them with the supplier if there are none yet
+     * If there are, the supplier is added to the previous ones, so released references are rebuilt by any instance
+     * that is still around
+     */
+    public static @NonNull TrimmableBitmapValidator forType(@NonNull Class<?> acgType, @NonNull ReferenceSupplier bitmapValidatorSupplier) {
+        TrimmableBitmapValidator references;
+        synchronized (REFERENCES_FOR_TYPES) {
+            references = REFERENCES_FOR_TYPES.get(acgType);
+            if (references != null) {
+                references.addSupplier(bitmapValidatorSupplier);
+                return references;
+            }
+        }
+
+        // Build outside of the lock, since building renders views and counts against the memory cap
+        references = new TrimmableBitmapValidator(bitmapValidatorSupplier);
+        synchronized (REFERENCES_FOR_TYPES) {
+            TrimmableBitmapValidator racingReferences = REFERENCES_FOR_TYPES.get(acgType);
+            if (racingReferences != null) {
+                racingReferences.addSupplier(bitmapValidatorSupplier);
+                return racingReferences;
+            }
+
+            REFERENCES_FOR_TYPES.put(acgType, references);
+            return references;
+        }
+    }
+}
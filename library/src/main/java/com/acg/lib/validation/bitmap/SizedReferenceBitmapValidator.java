@@ -0,0 +1,111 @@
+package com.acg.lib.validation.bitmap;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.util.LruCache;
+import com.acg.lib.validation.bitmap.encoding.EncodedBitmap;
+import com.acg.lib.validation.bitmap.encoding.EncodedBitmaps;
+import com.acg.lib.view.ValidatedViewWrapper;
+
+/**
+ * Validates a bitmap based on some state for a ValidatedViewWrapper, rendering the references lazily for each size
+ * the ACG is actually measured at
+ *
+ * This is what lets ACGs use relative sizes: nothing is rendered up front, and a layout that doesn't change the size
+ * reuses the cached reference instead of rendering again. References are kept in a small LRU cache keyed by
+ * (state, width, height).
+ */
+public class SizedReferenceBitmapValidator implements MeasurableBitmapValidator {
+
+    public static final int DEFAULT_CACHE_SIZE = 8;
+
+    private final @NonNull ReferenceRenderer referenceRenderer;
+    private final @NonNull LruCache<ReferenceKey, EncodedBitmap> references;
+
+    public SizedReferenceBitmapValidator(@NonNull ReferenceRenderer referenceRenderer) {
+        this(referenceRenderer, DEFAULT_CACHE_SIZE);
+    }
+
+    public SizedReferenceBitmapValidator(@NonNull ReferenceRenderer referenceRenderer, int cacheSize) {
+        this.referenceRenderer = referenceRenderer;
+        this.references = new LruCache<>(cacheSize);
+    }
+
+    @Override
+    public boolean validateBitmapForView(@NonNull ValidatedViewWrapper view, @NonNull Rect boundariesForView) {
+        EncodedBitmap reference = referenceFor(view.internalViewStateIndex(), boundariesForView.width(), boundariesForView.height());
+
+        if (reference == null) {
+            return false;
+        }
+
+        Bitmap bitmap = BitmapCapture.captureBoundaries(view, boundariesForView);
+
+        // Validate the bitmap
+        return reference.sameAs(bitmap);
+    }
+
+    /**
+     * Get the reference for a state and size, rendering it if it isn't cached
+     */
+    private EncodedBitmap referenceFor(int stateIndex, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        ReferenceKey key = new ReferenceKey(stateIndex, width, height);
+        EncodedBitmap reference = references.get(key);
+
+        if (reference == null) {
+            Bitmap bitmap = referenceRenderer.renderReference(stateIndex, width, height);
+            if (bitmap == null) {
+                return null;
+            }
+
+            reference = EncodedBitmaps.encode(bitmap);
+            references.put(key, reference);
+        }
+
+        return reference;
+    }
+
+    @Override
+    public long getReferenceByteCount() {
+        long byteCount = 0;
+        for (EncodedBitmap reference : references.snapshot().values()) {
+            byteCount += reference.getByteCount();
+        }
+        return byteCount;
+    }
+
+    private static final class ReferenceKey {
+        private final int stateIndex;
+        private final int width;
+        private final int height;
+
+        private ReferenceKey(int stateIndex, int width, int height) {
+            this.stateIndex = stateIndex;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ReferenceKey)) {
+                return false;
+            }
+
+            ReferenceKey other = (ReferenceKey) o;
+            return stateIndex == other.stateIndex && width == other.width && height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * stateIndex + width) + height;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.acg.lib.validation.bitmap;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import com.acg.lib.memory.ACGMemory;
+import com.acg.lib.memory.Trimmable;
+import com.acg.lib.view.ValidatedViewWrapper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Validates with references that are released under memory pressure, or when they push ACG state over the memory
+ * cap, and rebuilt lazily the next time the ACG validates
+ */
+public class TrimmableBitmapValidator implements MeasurableBitmapValidator, Trimmable {
+
+    // Newest first, since the newest instance is the most likely to still be able to build references
+    private final @NonNull List<ReferenceSupplier> bitmapValidatorSuppliers = new ArrayList<>();
+    private BitmapValidator bitmapValidator;
+
+    /**
+     * The supplier builds the references, and may return null if they can't be built right now
+     */
+    public TrimmableBitmapValidator(@NonNull ReferenceSupplier bitmapValidatorSupplier) {
+        this.bitmapValidatorSuppliers.add(bitmapValidatorSupplier);
+        this.bitmapValidator = bitmapValidatorSupplier.get();
+        ACGMemory.retain(this);
+    }
+
+    /**
+     * Also build released references with another supplier, keeping the references that are held
+     * This lets any instance of the same ACG that is still around rebuild references, even when the instance that
+     * rendered them, or the newest one, is gone. An equal supplier that was added before is moved to the front, and
+     * suppliers whose instance is gone are dropped, so the list stays as long as the number of live instances.
+     */
+    public synchronized void addSupplier(@NonNull ReferenceSupplier bitmapValidatorSupplier) {
+        Iterator<ReferenceSupplier> suppliers = bitmapValidatorSuppliers.iterator();
+        while (suppliers.hasNext()) {
+            ReferenceSupplier supplier = suppliers.next();
+            if (supplier.isGone() || supplier.equals(bitmapValidatorSupplier)) {
+                suppliers.remove();
+            }
+        }
+
+        bitmapValidatorSuppliers.add(0, bitmapValidatorSupplier);
+    }
+
+    @Override
+    public boolean validateBitmapForView(@NonNull ValidatedViewWrapper acgLocationView, @NonNull Rect boundariesForView) {
+        BitmapValidator currentBitmapValidator = currentBitmapValidator();
+
+        // Without references, nothing can be valid
+        return currentBitmapValidator != null && currentBitmapValidator.validateBitmapForView(acgLocationView, boundariesForView);
+    }
+
+    /**
+     * Get the references, rebuilding them if they were released
+     */
+    private BitmapValidator currentBitmapValidator() {
+        BitmapValidator currentBitmapValidator;
+        synchronized (this) {
+            if (bitmapValidator == null) {
+                bitmapValidator = buildBitmapValidator();
+            }
+            currentBitmapValidator = bitmapValidator;
+        }
+
+        // Count the references against the memory cap outside of our lock
+        ACGMemory.retain(this);
+        return currentBitmapValidator;
+    }
+
+    /**
+     * Build with the first supplier that can, dropping the ones that can't, since they add themselves again when
+     * their instance is attached again
+     */
+    private BitmapValidator buildBitmapValidator() {
+        Iterator<ReferenceSupplier> suppliers = bitmapValidatorSuppliers.iterator();
+        while (suppliers.hasNext()) {
+            BitmapValidator builtBitmapValidator = suppliers.next().get();
+            if (builtBitmapValidator != null) {
+                return builtBitmapValidator;
+            }
+
+            // Keep the last one, so that there is always something to build with
+            if (bitmapValidatorSuppliers.size() > 1) {
+                suppliers.remove();
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public synchronized void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            bitmapValidator = null;
+        }
+    }
+
+    @Override
+    public synchronized long getRetainedByteCount() {
+        return getReferenceByteCount();
+    }
+
+    @Override
+    public synchronized long getReferenceByteCount() {
+        if (bitmapValidator instanceof MeasurableBitmapValidator) {
+            return ((MeasurableBitmapValidator) bitmapValidator).getReferenceByteCount();
+        }
+        return 0;
+    }
+}
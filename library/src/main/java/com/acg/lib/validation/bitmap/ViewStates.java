@@ -0,0 +1,24 @@
+package com.acg.lib.validation.bitmap;
+
+import android.support.annotation.NonNull;
+import com.acg.lib.view.ValidatedViewWrapper;
+
+/**
+ * Helpers for sizing per-state reference arrays
+ */
+final class ViewStates {
+
+    private ViewStates() {
+    }
+
+    /**
+     * The number of state indices for a set of rendered views, which all share the same state extractor
+     */
+    static int stateCountFor(@NonNull Iterable<ValidatedViewWrapper> views) {
+        int stateCount = 0;
+        for (ValidatedViewWrapper view : views) {
+            stateCount = Math.max(stateCount, view.viewStateCount());
+        }
+        return stateCount;
+    }
+}
@@ -0,0 +1,59 @@
+package com.acg.lib.validation.bitmap.encoding;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import com.acg.lib.validation.bitmap.ScratchPool;
+
+/**
+ * A reference bitmap stored in a compact, lossless form
+ *
+ * Encoded bitmaps are compared against captured bitmaps directly, one row at a time, so a reference is never
+ * decoded back into a full ARGB_8888 bitmap.
+ */
+public abstract class EncodedBitmap {
+
+    protected final int width;
+    protected final int height;
+
+    protected EncodedBitmap(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * The number of bytes used to store the encoded pixels
+     */
+    public abstract int getByteCount();
+
+    /**
+     * Check that the encoded pixels [fromX, toX) of row y match a row of ARGB pixels, where row[x] is the pixel at x
+     */
+    public abstract boolean rowMatches(int y, @NonNull int[] row, int fromX, int toX);
+
+    /**
+     * Check that a bitmap has exactly the encoded pixels, reading it one row at a time
+     */
+    public boolean sameAs(@NonNull Bitmap bitmap) {
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            return false;
+        }
+
+        int[] row = ScratchPool.rowBuffer(0, width);
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            if (!rowMatches(y, row, 0, width)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
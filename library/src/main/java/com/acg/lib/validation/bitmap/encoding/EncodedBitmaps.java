@@ -0,0 +1,72 @@
+package com.acg.lib.validation.bitmap.encoding;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes reference bitmaps into whichever lossless compact form is smallest
+ */
+public final class EncodedBitmaps {
+
+    private EncodedBitmaps() {
+    }
+
+    public static @NonNull EncodedBitmap encode(@NonNull Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        return encode(pixels, width, height);
+    }
+
+    /**
+     * Encode ARGB pixels in row-major order, choosing between run-length, palette and reduced-depth encodings
+     */
+    public static @NonNull EncodedBitmap encode(@NonNull int[] pixels, int width, int height) {
+        int runCount = RunLengthEncodedBitmap.countRuns(pixels, width, height);
+        int runLengthBytes = RunLengthEncodedBitmap.byteCountFor(runCount, height);
+
+        Map<Integer, Integer> paletteIndices = paletteIndicesFor(pixels);
+        int paletteBytes = paletteIndices == null ? Integer.MAX_VALUE : PaletteEncodedBitmap.byteCountFor(paletteIndices.size(), pixels.length);
+
+        int reducedDepthBytes = Integer.MAX_VALUE;
+        Bitmap.Config reducedDepthConfig = null;
+        if (ReducedDepthEncodedBitmap.isLosslessAsAlpha8(pixels)) {
+            reducedDepthBytes = pixels.length;
+            reducedDepthConfig = Bitmap.Config.ALPHA_8;
+        } else if (ReducedDepthEncodedBitmap.isLosslessAsRgb565(pixels)) {
+            reducedDepthBytes = 2 * pixels.length;
+            reducedDepthConfig = Bitmap.Config.RGB_565;
+        }
+
+        if (runLengthBytes <= paletteBytes && runLengthBytes <= reducedDepthBytes) {
+            return new RunLengthEncodedBitmap(pixels, width, height, runCount);
+        } else if (paletteBytes <= reducedDepthBytes) {
+            return new PaletteEncodedBitmap(pixels, width, height, paletteIndices);
+        } else if (reducedDepthConfig == Bitmap.Config.ALPHA_8) {
+            return ReducedDepthEncodedBitmap.alpha8(pixels, width, height);
+        }
+        return ReducedDepthEncodedBitmap.rgb565(pixels, width, height);
+    }
+
+    /**
+     * Assign each distinct color an index, or return null if there are too many colors for a palette
+     */
+    private static Map<Integer, Integer> paletteIndicesFor(@NonNull int[] pixels) {
+        Map<Integer, Integer> paletteIndices = new HashMap<>();
+
+        for (int pixel : pixels) {
+            if (!paletteIndices.containsKey(pixel)) {
+                if (paletteIndices.size() == PaletteEncodedBitmap.MAX_COLORS) {
+                    return null;
+                }
+                paletteIndices.put(pixel, paletteIndices.size());
+            }
+        }
+
+        return paletteIndices;
+    }
+}
@@ -0,0 +1,73 @@
+package com.acg.lib.validation.bitmap.encoding;
+
+import android.support.annotation.NonNull;
+
+import java.util.Map;
+
+/**
+ * Stores a bitmap as a small palette of colors plus a packed index for every pixel
+ *
+ * Indices use 1, 2, 4 or 8 bits depending on the palette size, so a bitmap with at most 256 colors is always lossless.
+ */
+public final class PaletteEncodedBitmap extends EncodedBitmap {
+
+    static final int MAX_COLORS = 256;
+
+    private final int[] palette;
+    private final int bitsPerIndex;
+    private final int indexMask;
+    private final byte[] indices;
+
+    PaletteEncodedBitmap(@NonNull int[] pixels, int width, int height, @NonNull Map<Integer, Integer> paletteIndices) {
+        super(width, height);
+        this.palette = new int[paletteIndices.size()];
+        for (Map.Entry<Integer, Integer> entry : paletteIndices.entrySet()) {
+            palette[entry.getValue()] = entry.getKey();
+        }
+
+        this.bitsPerIndex = bitsPerIndexFor(palette.length);
+        this.indexMask = (1 << bitsPerIndex) - 1;
+        this.indices = new byte[packedLength(width * height, bitsPerIndex)];
+
+        for (int i = 0; i < pixels.length; i++) {
+            int bit = i * bitsPerIndex;
+            indices[bit >> 3] |= paletteIndices.get(pixels[i]) << (bit & 7);
+        }
+    }
+
+    static int bitsPerIndexFor(int colorCount) {
+        if (colorCount <= 2) {
+            return 1;
+        } else if (colorCount <= 4) {
+            return 2;
+        } else if (colorCount <= 16) {
+            return 4;
+        }
+        return 8;
+    }
+
+    static int byteCountFor(int colorCount, int pixelCount) {
+        return 4 * colorCount + packedLength(pixelCount, bitsPerIndexFor(colorCount));
+    }
+
+    private static int packedLength(int pixelCount, int bitsPerIndex) {
+        return (pixelCount * bitsPerIndex + 7) / 8;
+    }
+
+    @Override
+    public int getByteCount() {
+        return 4 * palette.length + indices.length;
+    }
+
+    @Override
+    public boolean rowMatches(int y, @NonNull int[] row, int fromX, int toX) {
+        int bit = (y * width + fromX) * bitsPerIndex;
+        for (int x = fromX; x < toX; x++, bit += bitsPerIndex) {
+            int index = (indices[bit >> 3] >> (bit & 7)) & indexMask;
+            if (row[x] != palette[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
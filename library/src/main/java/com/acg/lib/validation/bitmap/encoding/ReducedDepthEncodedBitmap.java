@@ -0,0 +1,109 @@
+package com.acg.lib.validation.bitmap.encoding;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+
+/**
+ * Stores a bitmap with fewer bits per pixel, in the forms of RGB_565 and ALPHA_8, when that loses nothing
+ *
+ * RGB_565 is lossless when every pixel is opaque and survives the round trip through 5/6/5 bit channels.
+ * ALPHA_8 is lossless when every pixel shares one RGB color and only the alpha varies.
+ */
+public final class ReducedDepthEncodedBitmap extends EncodedBitmap {
+
+    private final @NonNull Bitmap.Config config;
+
+    // RGB_565 pixels
+    private final short[] rgb565;
+
+    // ALPHA_8 pixels and the color they share
+    private final byte[] alpha8;
+    private final int rgb;
+
+    private ReducedDepthEncodedBitmap(int width, int height, @NonNull Bitmap.Config config, short[] rgb565, byte[] alpha8, int rgb) {
+        super(width, height);
+        this.config = config;
+        this.rgb565 = rgb565;
+        this.alpha8 = alpha8;
+        this.rgb = rgb;
+    }
+
+    static @NonNull ReducedDepthEncodedBitmap rgb565(@NonNull int[] pixels, int width, int height) {
+        short[] rgb565 = new short[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            rgb565[i] = toRgb565(pixels[i]);
+        }
+        return new ReducedDepthEncodedBitmap(width, height, Bitmap.Config.RGB_565, rgb565, null, 0);
+    }
+
+    static @NonNull ReducedDepthEncodedBitmap alpha8(@NonNull int[] pixels, int width, int height) {
+        byte[] alpha8 = new byte[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            alpha8[i] = (byte) (pixels[i] >>> 24);
+        }
+        int rgb = pixels.length == 0 ? 0 : pixels[0] & 0x00FFFFFF;
+        return new ReducedDepthEncodedBitmap(width, height, Bitmap.Config.ALPHA_8, null, alpha8, rgb);
+    }
+
+    /**
+     * Check that every pixel is opaque and converts to RGB_565 and back unchanged
+     */
+    static boolean isLosslessAsRgb565(@NonNull int[] pixels) {
+        for (int pixel : pixels) {
+            if (fromRgb565(toRgb565(pixel)) != pixel) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check that every pixel has the same RGB color
+     */
+    static boolean isLosslessAsAlpha8(@NonNull int[] pixels) {
+        for (int pixel : pixels) {
+            if ((pixel & 0x00FFFFFF) != (pixels[0] & 0x00FFFFFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static short toRgb565(int pixel) {
+        int r = (pixel >> 19) & 0x1F;
+        int g = (pixel >> 10) & 0x3F;
+        int b = (pixel >> 3) & 0x1F;
+        return (short) ((r << 11) | (g << 5) | b);
+    }
+
+    /**
+     * Expand to ARGB the way Android does, by replicating the high bits of each channel into the low bits
+     */
+    private static int fromRgb565(short pixel) {
+        int r = (pixel >> 11) & 0x1F;
+        int g = (pixel >> 5) & 0x3F;
+        int b = pixel & 0x1F;
+        return 0xFF000000 | ((r << 3 | r >> 2) << 16) | ((g << 2 | g >> 4) << 8) | (b << 3 | b >> 2);
+    }
+
+    public @NonNull Bitmap.Config getConfig() {
+        return config;
+    }
+
+    @Override
+    public int getByteCount() {
+        return config == Bitmap.Config.RGB_565 ? 2 * rgb565.length : alpha8.length;
+    }
+
+    @Override
+    public boolean rowMatches(int y, @NonNull int[] row, int fromX, int toX) {
+        int offset = y * width;
+        for (int x = fromX; x < toX; x++) {
+            int pixel = config == Bitmap.Config.RGB_565 ? fromRgb565(rgb565[offset + x]) : (alpha8[offset + x] << 24) | rgb;
+            if (row[x] != pixel) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
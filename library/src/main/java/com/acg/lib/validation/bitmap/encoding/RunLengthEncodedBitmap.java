@@ -0,0 +1,89 @@
+package com.acg.lib.validation.bitmap.encoding;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Stores each row of a bitmap as runs of a single color
+ *
+ * Solid ACG backgrounds collapse to one run per row, and only rows that cross the label need more than that.
+ */
+public final class RunLengthEncodedBitmap extends EncodedBitmap {
+
+    // Runs for row y are the indices [rowStarts[y], rowStarts[y + 1])
+    private final int[] rowStarts;
+    private final int[] runColors;
+
+    // Exclusive end x of each run; widths are bounded by the screen, so an unsigned 16-bit value is enough
+    private final char[] runEnds;
+
+    RunLengthEncodedBitmap(@NonNull int[] pixels, int width, int height, int runCount) {
+        super(width, height);
+        this.rowStarts = new int[height + 1];
+        this.runColors = new int[runCount];
+        this.runEnds = new char[runCount];
+
+        int run = 0;
+        for (int y = 0; y < height; y++) {
+            rowStarts[y] = run;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int color = pixels[offset + x];
+                if (x == 0 || color != runColors[run - 1]) {
+                    runColors[run++] = color;
+                }
+                runEnds[run - 1] = (char) (x + 1);
+            }
+        }
+        rowStarts[height] = run;
+    }
+
+    /**
+     * Count the runs needed to encode the pixels, so that encodings can be compared before building them
+     */
+    static int countRuns(@NonNull int[] pixels, int width, int height) {
+        int runs = 0;
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                if (x == 0 || pixels[offset + x] != pixels[offset + x - 1]) {
+                    runs++;
+                }
+            }
+        }
+        return runs;
+    }
+
+    static int byteCountFor(int runCount, int height) {
+        return 4 * (height + 1) + 6 * runCount;
+    }
+
+    @Override
+    public int getByteCount() {
+        return byteCountFor(runColors.length, height);
+    }
+
+    @Override
+    public boolean rowMatches(int y, @NonNull int[] row, int fromX, int toX) {
+        int run = rowStarts[y];
+        int lastRun = rowStarts[y + 1];
+
+        // Skip the runs that end before the range starts
+        while (run < lastRun && runEnds[run] <= fromX) {
+            run++;
+        }
+
+        int x = fromX;
+        while (x < toX && run < lastRun) {
+            int color = runColors[run];
+            int runEnd = Math.min(runEnds[run], toX);
+            for (; x < runEnd; x++) {
+                if (row[x] != color) {
+                    return false;
+                }
+            }
+            run++;
+        }
+
+        return x >= toX;
+    }
+}
@@ -0,0 +1,77 @@
+package com.acg.lib.validation.state;
+
+import android.support.annotation.NonNull;
+import android.view.View;
+import android.widget.Checkable;
+
+/**
+ * Extracts the state of any view as a bitset of the flags that affect how it looks, such as checked and pressed
+ *
+ * Only the flags the extractor is built with are tracked, and they are packed into consecutive bits in the order
+ * below, so an extractor for n flags has exactly 2^n dense state indices.
+ */
+public final class BitsetViewStateExtractor implements ViewStateExtractor {
+
+    public static final int CHECKED = 1;
+    public static final int PRESSED = 1 << 1;
+    public static final int ENABLED = 1 << 2;
+    public static final int FOCUSED = 1 << 3;
+    public static final int SELECTED = 1 << 4;
+    public static final int ACTIVATED = 1 << 5;
+
+    private static final int ALL_FLAGS = CHECKED | PRESSED | ENABLED | FOCUSED | SELECTED | ACTIVATED;
+
+    /**
+     * Only tracks whether the view is checked, which is all that the built-in ACGs render differently
+     * Views that are not Checkable always have state index 0, and checked views have state index 1
+     */
+    public static final BitsetViewStateExtractor CHECKED_STATE = new BitsetViewStateExtractor(CHECKED);
+
+    private final int flags;
+    private final int stateCount;
+
+    public BitsetViewStateExtractor(int flags) {
+        if ((flags & ~ALL_FLAGS) != 0) {
+            throw new IllegalArgumentException("Unknown view state flags: " + flags);
+        }
+
+        this.flags = flags;
+        this.stateCount = 1 << Integer.bitCount(flags);
+    }
+
+    @Override
+    public int stateCount() {
+        return stateCount;
+    }
+
+    @Override
+    public int stateIndex(@NonNull View internalView) {
+        int index = 0;
+        int bit = 0;
+
+        if ((flags & CHECKED) != 0) {
+            index |= bitFor(internalView instanceof Checkable && ((Checkable) internalView).isChecked(), bit++);
+        }
+        if ((flags & PRESSED) != 0) {
+            index |= bitFor(internalView.isPressed(), bit++);
+        }
+        if ((flags & ENABLED) != 0) {
+            index |= bitFor(internalView.isEnabled(), bit++);
+        }
+        if ((flags & FOCUSED) != 0) {
+            index |= bitFor(internalView.isFocused(), bit++);
+        }
+        if ((flags & SELECTED) != 0) {
+            index |= bitFor(internalView.isSelected(), bit++);
+        }
+        if ((flags & ACTIVATED) != 0) {
+            index |= bitFor(internalView.isActivated(), bit);
+        }
+
+        return index;
+    }
+
+    private static int bitFor(boolean isSet, int bit) {
+        return isSet ? 1 << bit : 0;
+    }
+}
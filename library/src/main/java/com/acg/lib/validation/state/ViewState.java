@@ -4,7 +4,10 @@ package com.acg.lib.validation.state;
  * Represents the state of a view.
  *
  * For now we just handle checked and unchecked, but later on we can extend this if we need to
+ *
+ * @deprecated validators now use dense state indices from a {@link ViewStateExtractor}
  */
+@Deprecated
 public enum ViewState {
     CHECKED, UNCHECKED;
 }
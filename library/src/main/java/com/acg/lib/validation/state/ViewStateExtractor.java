@@ -0,0 +1,21 @@
+package com.acg.lib.validation.state;
+
+import android.support.annotation.NonNull;
+import android.view.View;
+
+/**
+ * Maps the internal view of an ACG to a small, dense state index, so that references for each state can be held in
+ * flat arrays indexed by that number
+ */
+public interface ViewStateExtractor {
+
+    /**
+     * The number of possible states; every index is in [0, stateCount())
+     */
+    int stateCount();
+
+    /**
+     * The index of the state the internal view is in right now
+     */
+    int stateIndex(@NonNull View internalView);
+}
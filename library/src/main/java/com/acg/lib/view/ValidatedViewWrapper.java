@@ -13,9 +13,13 @@ import android.util.Pair;
 import android.view.*;
 import android.widget.ToggleButton;
 import com.acg.lib.validation.ACGValidator;
+import com.acg.lib.validation.CallSiteVerifier;
+import com.acg.lib.validation.state.BitsetViewStateExtractor;
 import com.acg.lib.validation.state.ViewState;
+import com.acg.lib.validation.state.ViewStateExtractor;
 import com.google.common.util.concurrent.*;
 
+import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.*;
 
@@ -24,7 +28,6 @@ import static android.view.View.MeasureSpec.EXACTLY;
 import static android.view.View.MeasureSpec.makeMeasureSpec;
 import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
 import static android.view.ViewGroup.LayoutParams.WRAP_CONTENT;
-import static com.acg.lib.validation.ACGValidator.validateCallingMethods;
 import static com.acg.lib.validation.ValidationParameters.*;
 import static java.util.Collections.singletonList;
 
@@ -34,14 +37,17 @@ import static java.util.Collections.singletonList;
  * This View contains an internal ACG View element, but doesn't allow anyone to actually access the underlying element.
  * All rendering logic is deferred to the underlying element.
  *
- * The View delegates events to the internal View, which then handles them. Then, it requests relayout.
+ * The View delegates events to the internal View, which then handles them. Then, it requests relayout if the
+ * internal View changed size, or otherwise only redraws.
  * For now, this only handles immediately relevant touch & motion events. Eventually, if we need to, we can add
  * delegators for KeyEvents, and so on.
  *
- * For now, we restrict ACGs to having solid backgrounds and predefined sizes. Transparent backgrounds and
- * relative sizes (e.g. wrap-content and match-parent) are not supported. Transparent backgrounds complicate
- * validation, and relative sizes complicate measurement and layout flow. This is something we can likely work
- * around at some point, but the time cost is probably not worth it for the first iteration.
+ * For now, we restrict ACGs to having solid backgrounds. Transparent backgrounds are not supported, since they
+ * complicate validation. Relative sizes (e.g. wrap-content and match-parent) are supported as long as the ACG renders
+ * its references lazily for each measured size, since a reference rendered ahead of time only fits one size.
+ *
+ * Wrappers can be detached and attached again, since random checks only run while the wrapper is attached and its
+ * window is visible.
  *
  * We go with this approach for now, but leave the Frame intact in case we want to return to it.
  */
@@ -50,28 +56,35 @@ public final class ValidatedViewWrapper extends View {
     private final @NonNull Bundle validationParameters;
     private final @NonNull View internalView;
     private final @NonNull ACGValidator acgValidator;
+    private final @NonNull ViewStateExtractor viewStateExtractor;
+
+    // Render state of the internal view, so that we only relayout or redraw when something actually changed
+    private boolean internalViewMeasured = false;
+    private int internalWidthMeasureSpec;
+    private int internalHeightMeasureSpec;
 
     // Validation checker
     private final Random random = new Random(System.currentTimeMillis());
+    private volatile boolean randomChecksRunning = false;
+    private volatile int randomCheckChain = 0;
+    private volatile ListenableFuture<?> pendingRandomCheck;
     private static final ListeningScheduledExecutorService RANDOM_CHECKER = MoreExecutors.listeningDecorator(Executors.newSingleThreadScheduledExecutor());
 
+    // Layout params may only be set when a parent adds the wrapper
+    private static final CallSiteVerifier ADD_VIEW_CALL_SITE = new CallSiteVerifier(
+            singletonList(new Pair<Class<?>, String>(ViewGroup.class, "addViewInner")));
+
     public ValidatedViewWrapper(@NonNull Context context, @NonNull final View internalView, @NonNull Bundle validationParameters, @NonNull ACGValidator acgValidator) {
-        super(context);
+        this(context, internalView, validationParameters, acgValidator, BitsetViewStateExtractor.CHECKED_STATE);
+    }
 
-        // Add a layout listener to the internal view so that we can invalidate after child layout changes
-        internalView.addOnLayoutChangeListener(new OnLayoutChangeListener() {
-            @Override
-            public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
-                postInvalidate();
-            }
-        });
+    public ValidatedViewWrapper(@NonNull Context context, @NonNull final View internalView, @NonNull Bundle validationParameters, @NonNull ACGValidator acgValidator, @NonNull ViewStateExtractor viewStateExtractor) {
+        super(context);
 
         this.internalView = internalView;
         this.validationParameters = validationParameters;
         this.acgValidator = acgValidator;
-
-        // Schedule the first random check
-        scheduleRandomCheck();
+        this.viewStateExtractor = viewStateExtractor;
 
         // Set the layout params so the parent sizes us correctly (we don't care if people later change this, since validation catches it)
         ViewGroup.LayoutParams layoutParams = this.internalView.getLayoutParams();
@@ -83,21 +96,80 @@ public final class ValidatedViewWrapper extends View {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        startRandomChecks();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        stopRandomChecks();
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+
+        // Pause while the window is hidden, since there is nothing on the screen to check
+        if (visibility == VISIBLE && getWindowToken() != null) {
+            startRandomChecks();
+        } else {
+            stopRandomChecks();
+        }
+    }
+
+    /**
+     * Random checks only run while the wrapper is on the screen, so that wrappers scrolled off screen or dropped by
+     * a list don't keep checking forever
+     */
+    private void startRandomChecks() {
+        if (validationParameters.isEmpty() || randomChecksRunning) {
+            return;
+        }
+
+        // A new chain, so that a check of a stopped chain that is still finishing doesn't schedule alongside it
+        randomChecksRunning = true;
+        scheduleRandomCheck(++randomCheckChain);
+    }
+
+    private void stopRandomChecks() {
+        randomChecksRunning = false;
+
+        ListenableFuture<?> future = pendingRandomCheck;
+        if (future != null) {
+            future.cancel(false);
+            pendingRandomCheck = null;
+        }
+    }
+
     /**
      * Schedule the next random validation check, which modifies the internal validation state
-     * As soon as that check runs, schedule the next one
+     * As soon as that check runs, schedule the next one, unless checks were stopped in the meantime
      */
-    private void scheduleRandomCheck() {
-        if (validationParameters.isEmpty()) {
+    private void scheduleRandomCheck(final int chain) {
+        if (!randomChecksRunning || chain != randomCheckChain) {
             return;
         }
 
         // Schedule the validation check into a future
-        ListenableFuture future = RANDOM_CHECKER.schedule(new Runnable() {
+        ListenableFuture<?> future = RANDOM_CHECKER.schedule(new Runnable() {
             private Runnable validateView = new Runnable() {
                 @Override
                 public void run() {
-                    acgValidator.validateView(getOuter());
+                    if (randomChecksRunning) {
+                        acgValidator.validateView(getOuter());
+                    }
                 }
             };
 
@@ -109,15 +181,20 @@ public final class ValidatedViewWrapper extends View {
             }
         }, (long) random.nextInt(validationParameters.getInt(RANDOM_CHECK_INTERVAL_PARAMETER)), TimeUnit.MILLISECONDS);
 
-        // On success, schedule the next check, and on failure, fail fast
-        Futures.addCallback(future, new FutureCallback() {
+        pendingRandomCheck = future;
+
+        // On success, schedule the next check, and on failure, fail fast (cancelling is not a failure)
+        Futures.addCallback(future, new FutureCallback<Object>() {
             @Override
             public void onSuccess(Object result) {
-                scheduleRandomCheck();
+                scheduleRandomCheck(chain);
             }
 
             @Override
             public void onFailure(Throwable t) {
+                if (t instanceof CancellationException) {
+                    return;
+                }
                 throw new RuntimeException(t);
             }
         });
@@ -138,8 +215,9 @@ public final class ValidatedViewWrapper extends View {
     protected void dispatchSetPressed(boolean pressed) {
         boolean internalViewIsClickable = internalView.isClickable() || internalView.isLongClickable();
         if (!pressed || !internalViewIsClickable) {
+            int[] drawableState = internalDrawableState();
             internalView.setPressed(pressed);
-            requestLayout();
+            onInternalViewChanged(drawableState);
         }
     }
 
@@ -160,8 +238,9 @@ public final class ValidatedViewWrapper extends View {
         boolean dispatch = false;
 
         if (onFilterTouchEventForSecurity(event)) {
+            int[] drawableState = internalDrawableState();
             dispatch = internalView.dispatchTouchEvent(event);
-            requestLayout();
+            onInternalViewChanged(drawableState);
         }
 
         return dispatch;
@@ -183,8 +262,9 @@ public final class ValidatedViewWrapper extends View {
         boolean dispatch = false;
 
         if (acgValidator.validateMotionEvent(event, this)) {
+            int[] drawableState = internalDrawableState();
             dispatch = internalView.dispatchTrackballEvent(event);
-            requestLayout();
+            onInternalViewChanged(drawableState);
         }
 
         return dispatch;
@@ -198,8 +278,9 @@ public final class ValidatedViewWrapper extends View {
         boolean dispatch = false;
 
         if (acgValidator.validateMotionEvent(event, this)) {
+            int[] drawableState = internalDrawableState();
             dispatch = internalView.dispatchGenericMotionEvent(event);
-            requestLayout();
+            onInternalViewChanged(drawableState);
         }
 
         return dispatch;
@@ -246,16 +327,37 @@ public final class ValidatedViewWrapper extends View {
      */
     @Override
     protected void dispatchDraw(Canvas canvas) {
+        forwardInternalDrawableInvalidations();
         internalView.draw(canvas);
     }
 
+    /**
+     * The internal view has no parent, so nothing it invalidates reaches the screen. Becoming the callback of its
+     * background lets ripples and other drawable animations redraw the wrapper instead. The background may be
+     * replaced, so this is checked on every draw.
+     */
+    private void forwardInternalDrawableInvalidations() {
+        Drawable background = internalView.getBackground();
+        if (background != null && background.getCallback() != this) {
+            background.setCallback(this);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The internal view is drawn at the origin of the wrapper, so its drawables have the same bounds in the wrapper
+     */
+    @Override
+    protected boolean verifyDrawable(@NonNull Drawable who) {
+        return super.verifyDrawable(who) || who == internalView.getBackground();
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
         internalView.layout(left, top, right, bottom);
-        postInvalidate();
     }
 
     /**
@@ -264,7 +366,9 @@ public final class ValidatedViewWrapper extends View {
     @Override
     protected void drawableStateChanged() {
         super.drawableStateChanged();
+        int[] drawableState = internalDrawableState();
         internalView.refreshDrawableState();
+        onInternalViewChanged(drawableState);
     }
 
     /**
@@ -317,8 +421,9 @@ public final class ValidatedViewWrapper extends View {
      */
     @Override
     protected void dispatchSetSelected(boolean selected) {
+        int[] drawableState = internalDrawableState();
         internalView.setSelected(selected);
-        requestLayout();
+        onInternalViewChanged(drawableState);
     }
 
     /**
@@ -326,8 +431,9 @@ public final class ValidatedViewWrapper extends View {
      */
     @Override
     protected void dispatchSetActivated(boolean activated) {
+        int[] drawableState = internalDrawableState();
         internalView.setActivated(activated);
-        requestLayout();
+        onInternalViewChanged(drawableState);
     }
 
     /**
@@ -337,21 +443,74 @@ public final class ValidatedViewWrapper extends View {
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         ViewGroup.LayoutParams layoutParams = internalView.getLayoutParams();
 
-        // We require the child to provide us with an exact measurement
         validateLayoutParams(layoutParams);
 
-        // We ignore the parent-provided constraints; the ACG always wins
-        internalView.measure(makeMeasureSpec(layoutParams.width, EXACTLY), makeMeasureSpec(layoutParams.height, EXACTLY));
+        // We ignore the parent-provided constraints for exact sizes; the ACG always wins
+        // Relative sizes are resolved against the parent-provided constraints
+        internalWidthMeasureSpec = measureSpecFor(widthMeasureSpec, layoutParams.width);
+        internalHeightMeasureSpec = measureSpecFor(heightMeasureSpec, layoutParams.height);
+        internalViewMeasured = true;
+        internalView.measure(internalWidthMeasureSpec, internalHeightMeasureSpec);
         setMeasuredDimension(internalView.getMeasuredWidth(), internalView.getMeasuredHeight());
     }
 
+    /**
+     * Snapshot the drawable state of the internal view before handing it something, for {@link #onInternalViewChanged}
+     */
+    private @NonNull int[] internalDrawableState() {
+        return internalView.getDrawableState().clone();
+    }
+
+    /**
+     * Bring the wrapper up to date after the internal view handled something, doing as little as possible:
+     * layout is only requested if the internal view changes size, and it is only redrawn if it was laid out again or
+     * its drawable state changed
+     * Invalidations of the internal view's background reach the wrapper through its callback instead.
+     */
+    private void onInternalViewChanged(@NonNull int[] drawableStateBefore) {
+        if (internalView.isLayoutRequested()) {
+            if (!internalViewMeasured) {
+                requestLayout();
+                return;
+            }
+
+            // Measure again with the same constraints to see whether the size changed
+            internalView.measure(internalWidthMeasureSpec, internalHeightMeasureSpec);
+            if (internalView.getMeasuredWidth() != getMeasuredWidth() || internalView.getMeasuredHeight() != getMeasuredHeight()) {
+                requestLayout();
+                return;
+            }
+
+            // Same size, so a layout in place is enough, but the content may have changed
+            internalView.layout(internalView.getLeft(), internalView.getTop(), internalView.getRight(), internalView.getBottom());
+            invalidate();
+            return;
+        }
+
+        if (!Arrays.equals(drawableStateBefore, internalView.getDrawableState())) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Get the measure spec for the internal view in one dimension
+     */
+    private static int measureSpecFor(int parentMeasureSpec, int size) {
+        if (size >= 0) {
+            return makeMeasureSpec(size, EXACTLY);
+        }
+
+        return ViewGroup.getChildMeasureSpec(parentMeasureSpec, 0, size);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public boolean performClick() {
+        int[] drawableState = internalDrawableState();
         boolean click = internalView.performClick();
-        requestLayout();
+        onInternalViewChanged(drawableState);
         return click;
     }
 
@@ -360,8 +519,8 @@ public final class ValidatedViewWrapper extends View {
      */
     @Override
     public void setLayoutParams(ViewGroup.LayoutParams params) {
-        Pair<Class<?>, String> expectedMethod = new Pair<Class<?>, String>(ViewGroup.class, "addViewInner");
-        if (!validateCallingMethods(singletonList(expectedMethod))) {
+        // Adding a view sets its parent only after its layout params, so a view with a parent can't be being added
+        if (validationParameters != null && (getParent() != null || !ADD_VIEW_CALL_SITE.verify())) {
             doNotSupportIfValidated();
         }
         super.setLayoutParams(params);
@@ -385,18 +544,43 @@ public final class ValidatedViewWrapper extends View {
     }
 
     /**
-     * Require the ACG to provide us with an exact measurement
+     * Require the ACG to provide us with an exact measurement, or a relative (MATCH_PARENT or WRAP_CONTENT) one if it
+     * renders references lazily for each measured size
+     * References rendered ahead of time are measured without a parent, so they would never match a relative size.
+     * Wrappers that aren't validated, such as the ones rendered in isolation, accept relative sizes too.
      */
     private void validateLayoutParams(ViewGroup.LayoutParams layoutParams) {
-        if (layoutParams.width == MATCH_PARENT || layoutParams.height == MATCH_PARENT) {
-            throw new UnsupportedOperationException("MATCH_PARENT layout in ACG views not supported");
-        } else if (layoutParams.width == WRAP_CONTENT || layoutParams.height == WRAP_CONTENT) {
-            throw new UnsupportedOperationException("WRAP_CONTENT layout in ACG views not supported");
-        } else if (layoutParams.width < 0 || layoutParams.height < 0) {
-            throw new UnsupportedOperationException("ACG must provide exact measurement to wrapper");
+        boolean allowsRelativeSizes = validationParameters.isEmpty() || validationParameters.getBoolean(RELATIVE_SIZES_PARAMETER);
+
+        if (!isValidSize(layoutParams.width, allowsRelativeSizes) || !isValidSize(layoutParams.height, allowsRelativeSizes)) {
+            throw new UnsupportedOperationException(allowsRelativeSizes ?
+                    "ACG must provide an exact or relative measurement to wrapper" :
+                    "ACG must provide an exact measurement to wrapper, or render references lazily to use relative ones");
         }
     }
 
+    private static boolean isValidSize(int size, boolean allowsRelativeSizes) {
+        return size >= 0 || (allowsRelativeSizes && (size == MATCH_PARENT || size == WRAP_CONTENT));
+    }
+
+    /**
+     * The dense index of the state the internal view is in, which validators use to look up references
+     */
+    public int internalViewStateIndex() {
+        return viewStateExtractor.stateIndex(internalView);
+    }
+
+    /**
+     * The number of possible state indices for the internal view
+     */
+    public int viewStateCount() {
+        return viewStateExtractor.stateCount();
+    }
+
+    /**
+     * @deprecated only understands ToggleButtons; use {@link #internalViewStateIndex()} instead
+     */
+    @Deprecated
     public @NonNull ViewState internalViewState() {
         if (internalView instanceof ToggleButton) {
             ToggleButton toggleButton = (ToggleButton) internalView;